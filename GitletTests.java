@@ -14,11 +14,14 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.Permission;
 import java.text.SimpleDateFormat;
@@ -54,6 +57,21 @@ public class GitletTests {
     static final Path NOTA = SRC.resolve("nota.txt");
     static final Path NOTB = SRC.resolve("notb.txt");
     static final Path NOTF = SRC.resolve("notf.txt");
+    static final Path LINES = SRC.resolve("lines.txt");
+    static final Path LINESTOP = SRC.resolve("linestop.txt");
+    static final Path LINESTOP2 = SRC.resolve("linestop2.txt");
+    static final Path LINESBOTTOM = SRC.resolve("linesbottom.txt");
+    static final Path LINESBOTH = SRC.resolve("linesboth.txt");
+    static final Path LINESCONFLICT = SRC.resolve("linesconflict.txt");
+    static final Path LINESRESOLVED = SRC.resolve("linesresolved.txt");
+    static final Path BADBUNDLE = SRC.resolve("badbundle.txt");
+    static final Path BADPACK = SRC.resolve("badpack.bundle");
+    static final Path IGNORE = SRC.resolve("ignore.txt");
+    static final Path TWELVE = SRC.resolve("twelve.txt");
+    static final Path TWELVEBOTH = SRC.resolve("twelveboth.txt");
+    static final Path DIFFWORKING = SRC.resolve("diffworking.txt");
+    static final Path DIFFCACHED = SRC.resolve("diffcached.txt");
+    static final Path BATCH = SRC.resolve("batch.txt");
     static final String DATE = "Date: \\w\\w\\w \\w\\w\\w \\d+ \\d\\d:\\d\\d:\\d\\d \\d\\d\\d\\d [-+]\\d\\d\\d\\d";
     static final String COMMIT_HEAD = "commit ([a-f0-9]+)[ \\t]*\\n(?:Merge:\\s+[0-9a-f]{7}\\s+[0-9a-f]{7}[ ]*\\n)?" + DATE;
     static final String COMMIT_LOG = "(===[ ]*\\ncommit [a-f0-9]+[ ]*\\n(?:Merge:\\s+[0-9a-f]{7}\\s+[0-9a-f]{7}[ ]*\\n)?${DATE}[ ]*\\n(?:.|\\n)*?(?=\\Z|\\n===))"
@@ -461,6 +479,13 @@ public class GitletTests {
         gitletCommand(new String[]{"init"}, "");
     }
 
+    public static void i_setupLines() {
+        i_prelude1();
+        writeFile(LINES, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Six lines"}, "");
+    }
+
     public static void i_setup1() {
         i_prelude1();
         writeFile(WUG, "f.txt");
@@ -1498,4 +1523,783 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    @Test
+    public void test45_sparseCheckout() {
+        i_setup1();
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        gitletCommand(new String[]{"sparse-checkout", "set", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileDoesNotExist("g.txt");
+        gitletCommand(new String[]{"sparse-checkout", "list"}, "f.txt");
+        gitletCommand(new String[]{"sparse-checkout", "disable"}, "");
+        assertFileEquals(NOTWUG, "g.txt");
+        writeFile(WUG2, "g.txt");
+        gitletCommand(new String[]{"sparse-checkout", "set", "f.txt"}, "You have uncommitted changes.");
+        assertFileEquals(WUG2, "g.txt");
+        gitletCommand(new String[]{"sparse-checkout", "list"}, "");
+    }
+
+    @Test
+    public void test46_lineMerge() {
+        i_setupLines();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINESTOP, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the first line"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINESBOTTOM, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the last line"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileEquals(LINESBOTH, "p.txt");
+    }
+
+    @Test
+    public void test46a_lineMergeConflict() {
+        i_setupLines();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINESTOP, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the first line"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINESTOP2, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the first line differently"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertFileEquals(LINESCONFLICT, "p.txt");
+    }
+
+    @Test
+    public void test47_renameMerge() {
+        i_setupLines();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "p.txt"}, "");
+        writeFile(LINES, "q.txt");
+        gitletCommand(new String[]{"add", "q.txt"}, "");
+        gitletCommand(new String[]{"commit", "Rename p.txt to q.txt"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINESBOTTOM, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the last line"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileDoesNotExist("p.txt");
+        assertFileEquals(LINESBOTTOM, "q.txt");
+    }
+
+    @Test
+    public void test48_octopusMerge() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "b1"}, "");
+        gitletCommand(new String[]{"branch", "b2"}, "");
+        gitletCommand(new String[]{"switch", "b1"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        gitletCommand(new String[]{"switch", "b2"}, "");
+        writeFile(WUG3, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add k.txt"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove g.txt"}, "");
+        gitletCommand(new String[]{"merge", "b1", "b2"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileDoesNotExist("g.txt");
+        assertFileEquals(WUG2, "h.txt");
+        assertFileEquals(WUG3, "k.txt");
+        gitletCommandP(new String[]{"log"}, """
+                ===
+                commit [a-f0-9]+
+                Merge: [0-9a-f]{7} [0-9a-f]{7} [0-9a-f]{7}
+                ${DATE}
+                Merged b1, b2 into main\\.
+
+                ${ARBLINES}
+                """
+                .replace("${DATE}", DATE)
+                .replace("${ARBLINES}", ARBLINES));
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                b1
+                b2
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test49_rerere() {
+        i_setupLines();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(LINESTOP, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the first line"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(LINESTOP2, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change the first line differently"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        String mainHead = m.group(1);
+        gitletCommand(new String[]{"rerere", "enable"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertFileEquals(LINESCONFLICT, "p.txt");
+        writeFile(LINESRESOLVED, "p.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"commit", "Resolve the first line"}, "");
+        gitletCommand(new String[]{"reset", mainHead}, "");
+        assertFileEquals(LINESTOP, "p.txt");
+        gitletCommand(new String[]{"merge", "other"}, "Resolved 1 conflict(s) using recorded resolutions.");
+        assertFileEquals(LINESRESOLVED, "p.txt");
+        gitletCommand(new String[]{"rerere", "disable"}, "");
+        gitletCommand(new String[]{"reset", mainHead}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertFileEquals(LINESCONFLICT, "p.txt");
+    }
+
+    @Test
+    public void test50_packedRefs() {
+        i_setup1();
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"pack-refs"}, "Packed 2 branches.");
+        assertFileExists(".gitlet/packed-refs");
+        assertFileDoesNotExist(".gitlet/branch/main");
+        i_blankStatus2();
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(WUG, "f.txt");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"rm-branch", "main"}, "");
+        gitletCommand(new String[]{"branch", "main"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"rm-branch", "other"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"pack-refs"}, "Packed 1 branch.");
+        gitletCommand(new String[]{"rm-branch", "other"}, "A branch with that name does not exist.");
+    }
+
+    @Test
+    public void test51_reflog() {
+        i_setup1();
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommandP(new String[]{"reflog"}, """
+                [0-9a-f]{7} HEAD@\\{0\\}: commit: Change f\\.txt
+                [0-9a-f]{7} HEAD@\\{1\\}: commit: Two files
+                [0-9a-f]{7} HEAD@\\{2\\}: commit \\(initial\\): initial commit
+                """);
+        gitletCommand(new String[]{"reset", "main@{1}"}, "");
+        assertFileEquals(WUG, "f.txt");
+        gitletCommandP(new String[]{"reflog", "main"}, """
+                [0-9a-f]{7} main@\\{0\\}: reset: moving to [0-9a-f]{7}
+                ${ARBLINES}
+                """
+                .replace("${ARBLINES}", ARBLINES));
+        gitletCommand(new String[]{"reset", "HEAD@{1}"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"reset", "main@{9}"}, "Log for main only has 5 entries.");
+        gitletCommand(new String[]{"reflog", "nobranch"}, "A branch with that name does not exist.");
+    }
+
+    @Test
+    public void test52_remotes() {
+        i_setup1();
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        gitletCommand(new String[]{"clone", ".", "up"}, "");
+        assertFileEquals(WUG, "up/f.txt");
+        gitletCommand(new String[]{"add-remote", "up", "up/.gitlet"}, "");
+        writeFile(WUG2, "up/f.txt");
+        gitletCommand(new String[]{"foreach", "up", "add", "f.txt"}, "=== . ===");
+        gitletCommand(new String[]{"foreach", "up", "commit", "Change f.txt upstream"}, "=== . ===");
+        gitletCommand(new String[]{"fetch", "up", "main"}, "");
+        assertFileEquals(WUG, "f.txt");
+        gitletCommand(new String[]{"fetch", "up", "nobranch"}, "That remote does not have that branch.");
+        gitletCommand(new String[]{"pull", "up", "main"}, "Current branch fast-forwarded.");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+                up/main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        writeFile(WUG3, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt again"}, "");
+        gitletCommand(new String[]{"merge", "up/main"}, "Given branch is an ancestor of the current branch.");
+        gitletCommand(new String[]{"push", "up", "main"}, "Cannot push to the branch checked out in the remote repository.");
+        assertFileEquals(WUG2, "up/f.txt");
+        gitletCommand(new String[]{"push", "up", "other"}, "");
+        gitletCommand(new String[]{"fetch", "up", "other"}, "");
+        gitletCommand(new String[]{"merge", "up/other"}, "Given branch is an ancestor of the current branch.");
+        gitletCommand(new String[]{"foreach", "up", "switch", "other"}, "=== . ===");
+        assertFileEquals(WUG3, "up/f.txt");
+    }
+
+    @Test
+    public void test53_bundle() {
+        i_setup1();
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        gitletCommand(new String[]{"clone", ".", "down"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommand(new String[]{"bundle", "create", "main.bundle", "main"}, "");
+        gitletCommandP(new String[]{"foreach", "down", "bundle", "unbundle", "../main.bundle"}, """
+                === \\. ===
+                Unbundled \\d+ commits\\.
+                """);
+        gitletCommand(new String[]{"foreach", "down", "merge", "bundle/main"}, """
+                === . ===
+                Current branch fast-forwarded.
+                """);
+        assertFileEquals(WUG2, "down/f.txt");
+        assertFileEquals(NOTWUG, "down/g.txt");
+        writeFile(BADBUNDLE, "bad.bundle");
+        gitletCommand(new String[]{"bundle", "unbundle", "bad.bundle"}, "Bundle has an invalid branch name.");
+        assertFileDoesNotExist("PWNED");
+        gitletCommand(new String[]{"branch", "../PWNED"}, "Invalid branch name.");
+        assertFileDoesNotExist(".gitlet/PWNED");
+        writeFile(BADPACK, "badpack.bundle"); // its one object claims to be 2 GiB long
+        gitletCommand(new String[]{"bundle", "unbundle", "badpack.bundle"}, "Pack is corrupt.");
+    }
+
+    @Test
+    public void test54_partialClone() {
+        i_setup1();
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        String firstId = m.group(1);
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommand(new String[]{"clone", "--filter=blob:none", ".", "part"}, "");
+        assertFileEquals(WUG2, "part/f.txt");
+        assertFileEquals(NOTWUG, "part/g.txt");
+        assertEquals("only the blobs of the checked-out commit are fetched",
+                2, new File("part/.gitlet/blob").list().length);
+        gitletCommand(new String[]{"foreach", "part", "restore", firstId, "--", "f.txt"}, "=== . ===");
+        assertFileEquals(WUG, "part/f.txt");
+        assertEquals(3, new File("part/.gitlet/blob").list().length);
+    }
+
+    @Test
+    public void test55_leftoverLockFiles() {
+        i_setup2();
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        String head = m.group(1);
+        // one commit written in full but not yet renamed into place, and one only half written
+        writeFile(Path.of(".gitlet/commit", head), ".gitlet/commit/" + head + ".lock");
+        writeFile(WUG, ".gitlet/commit/" + "0".repeat(40) + ".lock");
+        gitletCommandP(new String[]{"global-log"}, """
+                ${COMMIT_LOG}
+                ${COMMIT_LOG}
+                """.replace("${COMMIT_LOG}", COMMIT_LOG));
+        gitletCommand(new String[]{"find", "Two files"}, head);
+        gitletCommand(new String[]{"restore", head.substring(0, 8), "--", "f.txt"}, "");
+        gitletCommand(new String[]{"clone", ".", "copy"}, "");
+        assertFileDoesNotExist("copy/.gitlet/commit/" + head + ".lock");
+    }
+
+    @Test
+    public void test56_daemon() throws InterruptedException {
+        i_setup1();
+        Thread daemon = new Thread(() -> runGitletCommand(new String[]{"daemon"}));
+        daemon.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!OUT.toString().contains("Gitlet daemon listening")) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The daemon did not start.");
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        getOutput();
+        gitletCommand(new String[]{"daemon"}, "A daemon is already running in this repository.");
+        gitletCommand(new String[]{"--trace", "status"}, "Cannot trace commands while a daemon is running.");
+        gitletCommand(new String[]{"commit", "Two files"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                f.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"daemon", "stop"}, "Daemon stopped.");
+        daemon.join(10_000);
+        assertFalse("the daemon exits once stopped", daemon.isAlive());
+        assertFileDoesNotExist(".gitlet/daemon.sock");
+        gitletCommand(new String[]{"daemon", "stop"}, "No daemon is running.");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Change f.txt
+
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+    }
+
+    @Test
+    public void test57_lockFreeReaders() throws IOException {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt on other"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        try (FileChannel channel = FileChannel.open(Path.of(".gitlet/lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            // a writer switching to other has replaced the head, but not yet the working files
+            Files.writeString(Path.of(".gitlet/head"), "ref: other\n");
+            gitletCommandP(new String[]{"log"}, """
+                    ===
+                    ${COMMIT_HEAD}
+                    Change f.txt on other
+
+                    ${ARBLINES}
+                    """
+                    .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                    .replace("${ARBLINES}", ARBLINES));
+            gitletCommand(new String[]{"status"}, """
+                    === Branches ===
+                    main
+                    *other
+
+                    === Staged Files ===
+
+                    === Removed Files ===
+
+                    === Modifications Not Staged For Commit ===
+
+                    === Untracked Files ===
+
+                    """);
+            System.setProperty("gitlet.lock.timeout", "100");
+            try {
+                gitletCommand(new String[]{"add", "f.txt"},
+                        "Another gitlet process is changing this repository; try again later.");
+            } finally {
+                System.clearProperty("gitlet.lock.timeout");
+            }
+        }
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileEquals(WUG, "f.txt");
+    }
+
+    @Test
+    public void test58_parallelCheckout() {
+        i_prelude1();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        for (int i = 0; i < 70; i += 1) { // enough files to be written on the pool
+            writeFile(i % 2 == 0 ? WUG : NOTWUG, "w" + i + ".txt");
+            gitletCommand(new String[]{"add", "w" + i + ".txt"}, "");
+        }
+        gitletCommand(new String[]{"commit", "Seventy files"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileDoesNotExist("w0.txt");
+        System.setProperty("gitlet.checkout.threads", "4");
+        try {
+            System.setProperty("gitlet.checkout.queueBytes", "1"); // smaller than any one file
+            gitletCommand(new String[]{"switch", "other"}, "");
+            for (int i = 0; i < 70; i += 1) {
+                assertFileEquals(i % 2 == 0 ? WUG : NOTWUG, "w" + i + ".txt");
+            }
+            gitletCommand(new String[]{"switch", "main"}, "");
+            assertFileDoesNotExist("w0.txt");
+            System.setProperty("gitlet.checkout.queueBytes", "-1");
+            gitletCommand(new String[]{"switch", "other"}, "");
+            for (int i = 0; i < 70; i += 1) {
+                assertFileEquals(i % 2 == 0 ? WUG : NOTWUG, "w" + i + ".txt");
+            }
+        } finally {
+            System.clearProperty("gitlet.checkout.threads");
+            System.clearProperty("gitlet.checkout.queueBytes");
+        }
+    }
+
+    @Test
+    public void test59_ignoreFile() {
+        i_setup1();
+        writeFile(IGNORE, ".gitletignore");
+        gitletCommand(new String[]{"add", ".gitletignore"}, "");
+        gitletCommand(new String[]{"commit", "Two files and ignores"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h.txt"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        String[] ignored = {"build.log", "cache1.txt", "notez.txt", "x.tmp", "anchored.txt", "#hash.txt"};
+        for (String name : ignored) {
+            writeFile(WUG3, name);
+        }
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG2, "h.txt");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Current branch fast-forwarded.");
+        assertFileEquals(WUG2, "h.txt");
+        // re-included by !, outside a class, inside a negated class, under a directory, or not a directory
+        String[] untracked = {"keep.log", "cacheA.txt", "notea.txt", "nested.txt", "tmp.txt"};
+        for (String name : untracked) {
+            writeFile(WUG3, name);
+            gitletCommand(new String[]{"switch", "main"},
+                    "There is an untracked file in the way; delete it, or add and commit it first.");
+            gitletCommand(new String[]{"merge", "main"},
+                    "There is an untracked file in the way; delete it, or add and commit it first.");
+            deleteFile(name);
+        }
+        for (String name : ignored) {
+            assertFileEquals(WUG3, name);
+        }
+    }
+
+    @Test
+    public void test60_diff() throws IOException {
+        i_prelude1();
+        writeFile(TWELVE, "p.txt");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Twelve lines"}, "");
+        writeFile(TWELVEBOTH, "p.txt");
+        gitletCommand(new String[]{"diff"}, Files.readString(DIFFWORKING));
+        gitletCommand(new String[]{"diff", "--cached"}, "");
+        gitletCommand(new String[]{"add", "p.txt"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(NOTWUG, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"diff"}, "");
+        gitletCommand(new String[]{"diff", "--cached"}, Files.readString(DIFFCACHED));
+        gitletCommand(new String[]{"commit", "Change both ends"}, "");
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Change both ends
+
+                ===
+                ${COMMIT_HEAD}
+                Twelve lines
+
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        gitletCommand(new String[]{"diff", m.group(2), m.group(1)}, Files.readString(DIFFCACHED));
+        gitletCommand(new String[]{"diff", m.group(1), m.group(1)}, "");
+        gitletCommand(new String[]{"diff", "--bogus"}, "Incorrect operands.");
+    }
+
+    @Test
+    public void test61_batch() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        writeFile(NOTWUG, "g.txt");
+        writeFile(WUG2, "h.txt");
+        writeFile(BATCH, "cmds.txt");
+        gitletCommand(new String[]{"batch", "cmds.txt"}, """
+                File does not exist.
+                Unterminated quote.
+                """);
+        gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                It's added
+
+                ===
+                ${COMMIT_HEAD}
+                Remove f.txt, "quoted"
+
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        // the last line's rm was only saved when the batch reached the end of its input
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        assertFileDoesNotExist("f.txt");
+        assertFileDoesNotExist("g.txt");
+        assertFileEquals(WUG2, "h.txt");
+        gitletCommand(new String[]{"batch", "nofile.txt"}, "File does not exist.");
+    }
+
+    @Test
+    public void test62_foreach() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "One file"}, "");
+        gitletCommand(new String[]{"clone", ".", "repos/a"}, "");
+        gitletCommand(new String[]{"clone", ".", "repos/b"}, "");
+        new File("repos/plain").mkdirs(); // not a repository, so skipped
+        gitletCommand(new String[]{"foreach", "repos", "branch", "other"}, """
+                === a ===
+
+                === b ===
+                """);
+        gitletCommand(new String[]{"foreach", "repos/b", "rm-branch", "other"}, "=== . ===");
+        gitletCommand(new String[]{"foreach", "repos", "branch", "other"}, """
+                === a ===
+                A branch with that name already exists.
+
+                === b ===
+                """);
+        writeFile(WUG2, "repos/b/f.txt");
+        gitletCommand(new String[]{"foreach", "repos", "add", "f.txt"}, """
+                === a ===
+
+                === b ===
+                """);
+        gitletCommand(new String[]{"foreach", "repos", "commit", "Change f.txt"}, """
+                === a ===
+                No changes added to the commit.
+
+                === b ===
+                """);
+        assertFileEquals(WUG, "repos/a/f.txt");
+        assertFileEquals(WUG2, "repos/b/f.txt");
+        gitletCommand(new String[]{"foreach", "nodir", "status"}, "Directory does not exist.");
+        gitletCommand(new String[]{"foreach", "repos/plain", "status"}, "No Gitlet repositories found.");
+        gitletCommand(new String[]{"foreach", "repos", "foreach", "repos", "status"},
+                "Cannot run foreach in every repository.");
+    }
+
+    @Test
+    public void test63_linkedClone() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "One file"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Change f.txt
+
+                ===
+                ${COMMIT_HEAD}
+                One file
+
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        String headId = m.group(1);
+        String firstId = m.group(2);
+        gitletCommand(new String[]{"clone", ".", "linked"}, "");
+        assertEquals("the clone's commits are hard links to this repository's",
+                2, Files.getAttribute(Path.of("linked/.gitlet/commit", headId), "unix:nlink"));
+        assertFileEquals(WUG2, "linked/f.txt");
+        gitletCommand(new String[]{"foreach", "linked", "restore", firstId, "--", "f.txt"}, "=== . ===");
+        assertFileEquals(WUG, "linked/f.txt");
+        gitletCommand(new String[]{"foreach", "linked", "add", "f.txt"}, "=== . ===");
+        gitletCommand(new String[]{"foreach", "linked", "commit", "Change f.txt back"}, "=== . ===");
+        gitletCommand(new String[]{"find", "Change f.txt back"}, "Found no commit with that message.");
+        assertFileEquals(WUG2, "f.txt");
+    }
+
+    @Test
+    public void test64_sharedClone() {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "One file"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Change f.txt
+
+                ===
+                ${COMMIT_HEAD}
+                One file
+
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        String firstId = m.group(2);
+        gitletCommand(new String[]{"clone", ".", "src"}, "");
+        gitletCommand(new String[]{"clone", "--shared", "src", "shared"}, "");
+        assertFileExists("shared/.gitlet/alternates");
+        assertEquals("a shared clone borrows every object", 0, new File("shared/.gitlet/commit").list().length);
+        assertEquals(0, new File("shared/.gitlet/blob").list().length);
+        assertFileEquals(WUG2, "shared/f.txt");
+        gitletCommand(new String[]{"foreach", "shared", "restore", firstId, "--", "f.txt"}, "=== . ===");
+        assertFileEquals(WUG, "shared/f.txt");
+        gitletCommand(new String[]{"foreach", "shared", "dissociate"}, """
+                === . ===
+                Copied 3 borrowed commits.
+                """);
+        assertFileDoesNotExist("shared/.gitlet/alternates");
+        assertEquals(3, new File("shared/.gitlet/commit").list().length);
+        assertEquals(2, new File("shared/.gitlet/blob").list().length);
+        assertTrue(new File("src").renameTo(new File("gone"))); // the clone no longer needs it
+        gitletCommand(new String[]{"foreach", "shared", "restore", "--", "f.txt"}, "=== . ===");
+        assertFileEquals(WUG2, "shared/f.txt");
+        gitletCommandP(new String[]{"foreach", "shared", "log"}, """
+                === \\. ===
+                ===
+                ${COMMIT_HEAD}
+                Change f.txt
+
+                ===
+                ${COMMIT_HEAD}
+                One file
+
+                ${ARBLINES}
+                """
+                .replace("${COMMIT_HEAD}", COMMIT_HEAD)
+                .replace("${ARBLINES}", ARBLINES));
+        gitletCommand(new String[]{"foreach", "shared", "dissociate"}, """
+                === . ===
+                This repository does not borrow objects from another.
+                """);
+    }
+
+    @Test
+    public void test65_trace() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        PrintStream originalErr = System.err;
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(err, true));
+        try {
+            gitletCommand(new String[]{"--trace=json", "add", "f.txt"}, "");
+        } finally {
+            System.setErr(originalErr);
+        }
+        String json = err.toString().strip();
+        assertTrue("trace JSON is one object with a list of operations: " + json,
+                json.startsWith("{\"operations\": [") && json.endsWith("]}"));
+        String body = json.substring("{\"operations\": [".length(), json.length() - "]}".length()).strip();
+        Pattern operation = Pattern.compile(
+                "\\{\"name\": \"([^\"]*)\", \"calls\": (\\d+), \"bytes\": (\\d+), \"ns\": (\\d+)\\}");
+        List<String> names = new ArrayList<>();
+        long previousNs = Long.MAX_VALUE;
+        long writtenBytes = -1;
+        for (String entry : body.split(",\\s*\n")) {
+            Matcher m = operation.matcher(entry.strip());
+            assertTrue("malformed trace entry: " + entry, m.matches());
+            names.add(m.group(1));
+            assertTrue("every operation listed was called", Long.parseLong(m.group(2)) > 0);
+            long ns = Long.parseLong(m.group(4));
+            assertTrue("operations are listed most expensive first", ns <= previousNs);
+            previousNs = ns;
+            if (m.group(1).equals("writeObject")) {
+                writtenBytes = Long.parseLong(m.group(3));
+            }
+        }
+        assertEquals("the command itself encloses everything else", "command add", names.get(0));
+        assertEquals("the blob added is the only object written", Files.size(WUG), writtenBytes);
+
+        err.reset();
+        System.setErr(new PrintStream(err, true));
+        try {
+            gitletCommand(new String[]{"--trace", "status"}, """
+                    === Branches ===
+                    *main
+
+                    === Staged Files ===
+                    f.txt
+
+                    === Removed Files ===
+
+                    === Modifications Not Staged For Commit ===
+
+                    === Untracked Files ===
+
+                    """);
+            gitletCommand(new String[]{"--trace=bogus", "status"}, "Incorrect operands.");
+        } finally {
+            System.setErr(originalErr);
+        }
+        String[] table = err.toString().split("\n");
+        assertTrue("trace table has a header: " + table[0], table[0].matches("operation +calls +bytes +ms"));
+        assertTrue("trace table lists the command: " + table[1],
+                table[1].matches("command status +1 +0 +\\d+\\.\\d{3}"));
+    }
 }
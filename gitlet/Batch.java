@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Runs many commands, one per line, against a single repository in one process. Lines are
+ *  split into arguments like a shell would: on whitespace, with single or double quotes
+ *  around arguments that contain it. Blank lines and lines starting with # are skipped.
+ *  A failing command prints its error and the batch goes on with the next line.
+ *  The staging area is written once per transaction rather than after every add and rm:
+ *  it is flushed after each command that is not add or rm, and at the end of the input.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class Batch {
+    private final Repository repository;
+
+    public Batch(Repository repository) {
+        this.repository = repository;
+    }
+
+    /** Runs every command read from IN */
+    public void run(BufferedReader in) {
+        repository.lock(); // held throughout, since saves of the staging area are deferred
+        repository.deferSaves(true);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                runLine(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            repository.deferSaves(false);
+            repository.unlock();
+        }
+    }
+
+    /** Runs the command on LINE, if any */
+    private void runLine(String line) {
+        String trimmed = line.strip();
+        if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+            return;
+        }
+        try {
+            String[] args = split(trimmed);
+            if (args[0].equals("batch") || args[0].equals("daemon")) {
+                throw new GitletException("Cannot run " + args[0] + " inside a batch.");
+            }
+            Main.run(repository, args);
+            if (!args[0].equals("add") && !args[0].equals("rm")) {
+                repository.flush();
+            }
+        } catch (GitletException e) {
+            repository.getOut().println(e.getMessage());
+        }
+    }
+
+    /** Splits LINE into arguments at unquoted whitespace. Quotes of either kind group
+     *  characters into one argument; a backslash outside single quotes escapes the next character. */
+    static String[] split(String line) {
+        List<String> args = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inArg = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                current.append(line.charAt(i));
+                inArg = true;
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inArg = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inArg) {
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArg = false;
+                }
+            } else {
+                current.append(c);
+                inArg = true;
+            }
+        }
+        if (quote != 0) {
+            throw new GitletException("Unterminated quote.");
+        }
+        if (inArg) {
+            args.add(current.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+}
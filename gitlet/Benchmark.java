@@ -0,0 +1,358 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Micro-benchmarks for Gitlet internals, invoked as follows:
+ *      java gitlet.Benchmark checkout [FILES] [FILE_BYTES]
+ *      java gitlet.Benchmark merge3 [LINES]
+ *      java gitlet.Benchmark repository [FILES] [FILE_BYTES] [DEPTH] [BRANCHES] [ROUNDS]
+ *      java gitlet.Benchmark generate DIR [FILES] [FILE_BYTES] [DEPTH] [BRANCHES]
+ *  Each benchmark builds its own synthetic input in a temporary directory and
+ *  deletes it afterwards. The repository benchmark times the commands and internals
+ *  that dominate real use against a generated repository, and prints its results as
+ *  JSON so that runs of different versions can be compared; generate only builds such
+ *  a repository, in DIR, and leaves it there. The JMH benchmarks in jmh/ measure the same
+ *  scenarios from the same inputs, with forked JVMs and proper warmup, when built with Maven's
+ *  jmh profile.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class Benchmark {
+    private static final double MB = 1024.0 * 1024.0;
+    /** Untimed runs of each repository operation before the timed ones */
+    private static final int WARMUP_ROUNDS = 3;
+    /** Commits made on each generated side branch */
+    private static final int BRANCH_COMMITS = 3;
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Benchmark checkout [FILES] [FILE_BYTES] | merge3 [LINES]"
+                    + " | repository [FILES] [FILE_BYTES] [DEPTH] [BRANCHES] [ROUNDS]"
+                    + " | generate DIR [FILES] [FILE_BYTES] [DEPTH] [BRANCHES]");
+            return;
+        }
+        try {
+            switch (args[0]) {
+                case "checkout":
+                    checkout(intArg(args, 1, "FILES", 100_000, 0), intArg(args, 2, "FILE_BYTES", 1024, 0));
+                    break;
+                case "merge3":
+                    merge3(intArg(args, 1, "LINES", 200_000, 0));
+                    break;
+                case "repository":
+                    repository(intArg(args, 1, "FILES", 1000, 1), intArg(args, 2, "FILE_BYTES", 1024, 0),
+                            intArg(args, 3, "DEPTH", 200, 1), intArg(args, 4, "BRANCHES", 4, 0),
+                            intArg(args, 5, "ROUNDS", 20, 1));
+                    break;
+                case "generate":
+                    if (args.length < 2) {
+                        System.out.println("Please enter a directory.");
+                        return;
+                    }
+                    Repository generated = generateRepository(Path.of(args[1]), intArg(args, 2, "FILES", 1000, 1),
+                            intArg(args, 3, "FILE_BYTES", 1024, 0), intArg(args, 4, "DEPTH", 200, 1),
+                            intArg(args, 5, "BRANCHES", 4, 0));
+                    System.out.println("Generated " + generated.getRoot());
+                    break;
+                default:
+                    System.out.println("No benchmark with that name exists.");
+            }
+        } catch (GitletException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /** Checks out a synthetic commit of FILES files of FILEBYTES bytes each from a directory of
+     *  blobs, as a checkout reads them from the object store, first on one thread and then on the
+     *  default checkout pool, and reports files/sec and MB/sec for both */
+    private static void checkout(int files, int fileBytes) throws IOException {
+        Path store = Files.createTempDirectory("gitlet-bench-blobs");
+        try {
+            Map<String, String> blobIds = writeBlobStore(store, files, fileBytes);
+            CheckoutWriter.Source source = blobStoreSource(store);
+            int threads = Integer.getInteger(CheckoutWriter.THREADS_PROPERTY,
+                    Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+            runCheckout("sequential", blobIds, source, 1);
+            runCheckout("parallel(" + threads + ")", blobIds, source, threads);
+        } finally {
+            deleteRecursively(store);
+        }
+    }
+
+    private static void runCheckout(String label, Map<String, String> blobIds, CheckoutWriter.Source source,
+                                    int threads) throws IOException {
+        Path dir = Files.createTempDirectory("gitlet-bench");
+        try {
+            CheckoutWriter writer = new CheckoutWriter(dir.toFile(), threads, 64 << 20);
+            long start = System.nanoTime();
+            writer.write(blobIds, source);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("checkout %-14s %8d files %10.1f files/sec %8.1f MB/sec%n", label,
+                    writer.getFilesWritten(), writer.getFilesWritten() / seconds,
+                    writer.getBytesWritten() / MB / seconds);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /** Three-way merges the merge3Input of LINES lines three times and reports lines/sec */
+    private static void merge3(int lines) {
+        String[][] input = merge3Input(lines);
+        for (int round = 0; round < 3; round += 1) {
+            long start = System.nanoTime();
+            int conflicts = Merge3.merge(input[0], input[1], input[2], Writer.nullWriter());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("merge3 round %d %8d lines %6d conflicts %8.1f ms %12.1f lines/sec%n", round,
+                    lines, conflicts, seconds * 1000, lines / seconds);
+        }
+    }
+
+    /** Times each operation ROUNDS times against a repository generated from FILES, FILEBYTES,
+     *  DEPTH and BRANCHES, and prints the parameters and the min, median and mean of each as JSON */
+    private static void repository(int files, int fileBytes, int depth, int branches, int rounds)
+            throws IOException {
+        Path dir = Files.createTempDirectory("gitlet-bench");
+        try {
+            long start = System.nanoTime();
+            Repository repo = generateRepository(dir, files, fileBytes, depth, branches);
+            long generateNs = System.nanoTime() - start;
+            String mainTip = repo.getHead();
+            String content = syntheticContents(0, fileBytes);
+            StringBuilder json = new StringBuilder("{\n");
+            json.append("  \"benchmark\": \"repository\",\n");
+            json.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n");
+            json.append("  \"files\": ").append(files).append(", \"fileBytes\": ").append(fileBytes)
+                    .append(", \"depth\": ").append(depth).append(", \"branches\": ").append(branches)
+                    .append(", \"rounds\": ").append(rounds).append(",\n");
+            json.append("  \"generateNs\": ").append(generateNs).append(",\n");
+            json.append("  \"results\": [");
+
+            // Operations that leave the repository as they found it come first.
+            measure(json, "sha1", rounds, round -> time(() -> Utils.sha1(content)));
+            Commit head = repo.readCommit(mainTip);
+            measure(json, "commit.serialize", rounds, round -> time(() -> Utils.serialize(head)));
+            measure(json, "commit.deserialize", rounds, round -> time(() -> repo.readCommit(mainTip)));
+            measure(json, "log", rounds, round -> time(repo::log));
+            measure(json, "global-log", rounds, round -> time(repo::globalLog));
+            measure(json, "find", rounds, round -> time(() -> repo.find("main 1")));
+            measure(json, "status", rounds, round -> time(repo::status));
+            if (branches > 0) {
+                measure(json, "switch", rounds, round -> time(() -> repo.switching(branchName(0))) // there and back
+                        + time(() -> repo.switching("main")));
+                measure(json, "merge", rounds, round -> {
+                    long ns = time(() -> repo.merge(List.of(branchName(round % branches))));
+                    repo.reset(mainTip);
+                    return ns;
+                });
+            }
+            measure(json, "add", rounds, round -> {
+                Utils.writeContents(new File(repo.getRoot(), "file0.txt"), content + "add " + round + "\n");
+                return time(() -> repo.add("file0.txt"));
+            });
+            measure(json, "commit", rounds, round -> {
+                Utils.writeContents(new File(repo.getRoot(), "file1.txt"), content + "commit " + round + "\n");
+                repo.add("file1.txt");
+                return time(() -> repo.commit("bench commit " + round));
+            });
+            json.setLength(json.length() - 1);
+            System.out.println(json.append("\n  ]\n}"));
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /** Builds in DIR a repository of FILES files of FILEBYTES bytes whose main branch has DEPTH
+     *  commits, each changing one file, and BRANCHES branches that fork from evenly spaced commits
+     *  of main and each add files of their own, so that merging any of them into main is clean.
+     *  The contents and shape of the history depend only on the parameters. */
+    static Repository generateRepository(Path dir, int files, int fileBytes, int depth, int branches) {
+        Repository repo = new Repository(dir.toFile(), new PrintStream(OutputStream.nullOutputStream()), null);
+        File root = repo.getRoot();
+        root.mkdirs();
+        repo.init();
+        repo.deferSaves(true);
+        for (int i = 0; i < files; i += 1) {
+            Utils.writeContents(new File(root, "file" + i + ".txt"), syntheticContents(i, fileBytes));
+            repo.add("file" + i + ".txt");
+        }
+        repo.commit("main 0");
+        int forkEvery = Math.max(1, (depth - 1) / (branches + 1));
+        int forked = 0;
+        for (int c = 1; c < depth; c += 1) {
+            if (c % forkEvery == 0 && forked < branches) {
+                repo.branch(branchName(forked));
+                forked += 1;
+            }
+            int file = c % files;
+            Utils.writeContents(new File(root, "file" + file + ".txt"),
+                    syntheticContents(file, fileBytes) + "main " + c + "\n");
+            repo.add("file" + file + ".txt");
+            repo.commit("main " + c);
+        }
+        for (; forked < branches; forked += 1) {
+            repo.branch(branchName(forked)); // histories too short to space them out fork at the tip
+        }
+        for (int b = 0; b < branches; b += 1) {
+            repo.switching(branchName(b));
+            for (int c = 0; c < BRANCH_COMMITS; c += 1) {
+                String fileName = branchName(b) + "-" + c + ".txt";
+                Utils.writeContents(new File(root, fileName), syntheticContents(files + c, fileBytes));
+                repo.add(fileName);
+                repo.commit(branchName(b) + " " + c);
+            }
+        }
+        if (branches > 0) {
+            repo.switching("main");
+        }
+        repo.deferSaves(false);
+        return repo;
+    }
+
+    static String branchName(int index) {
+        return "branch" + index;
+    }
+
+    /** One run of a benchmarked operation, returning the nanoseconds its timed part took */
+    private interface Round {
+        long run(int round) throws IOException;
+    }
+
+    /** The timed part of a round */
+    private interface Timed {
+        void run() throws IOException;
+    }
+
+    private static long time(Timed timed) throws IOException {
+        long start = System.nanoTime();
+        timed.run();
+        return System.nanoTime() - start;
+    }
+
+    /** Runs ROUND WARMUP_ROUNDS times untimed and then ROUNDS times, at least once, and appends
+     *  the statistics of the timed runs to JSON as an object named NAME */
+    private static void measure(StringBuilder json, String name, int rounds, Round round) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i += 1) {
+            round.run(i);
+        }
+        if (rounds < 1) {
+            throw new IllegalArgumentException("rounds must be at least 1");
+        }
+        long[] ns = new long[rounds];
+        long total = 0;
+        for (int i = 0; i < rounds; i += 1) {
+            ns[i] = round.run(WARMUP_ROUNDS + i);
+            total += ns[i];
+        }
+        Arrays.sort(ns);
+        json.append("\n    {\"name\": \"").append(name).append("\", \"minNs\": ").append(ns[0])
+                .append(", \"medianNs\": ").append(ns[rounds / 2])
+                .append(", \"meanNs\": ").append(total / rounds).append("},");
+    }
+
+    /** Returns FILES distinct file contents of FILEBYTES characters each, keyed by file name */
+    static Map<String, String> syntheticBlobMap(int files, int fileBytes) {
+        Map<String, String> blobMap = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            blobMap.put("file" + i + ".txt", syntheticContents(i, fileBytes));
+        }
+        return blobMap;
+    }
+
+    /** Writes the blobs of syntheticBlobMap(FILES, FILEBYTES) into the directory STORE, each in a
+     *  file named by its ID, and returns the ID of each file's contents, keyed by file name */
+    static Map<String, String> writeBlobStore(Path store, int files, int fileBytes) {
+        Map<String, String> blobIds = new HashMap<>();
+        for (Map.Entry<String, String> entry : syntheticBlobMap(files, fileBytes).entrySet()) {
+            String id = Utils.sha1(entry.getValue());
+            Utils.writeContents(store.resolve(id).toFile(), entry.getValue());
+            blobIds.put(entry.getKey(), id);
+        }
+        return blobIds;
+    }
+
+    /** Returns a checkout source reading blobs by ID from the directory STORE, as writeBlobStore left them */
+    static CheckoutWriter.Source blobStoreSource(Path store) {
+        return new CheckoutWriter.Source() {
+            @Override
+            public long size(String id) {
+                return store.resolve(id).toFile().length();
+            }
+
+            @Override
+            public byte[] read(String id) {
+                return Utils.readContents(store.resolve(id).toFile());
+            }
+        };
+    }
+
+    /** Returns the base, ours and theirs lines of a file of LINES lines in which each side changed
+     *  every 100th line, at different offsets so that no region conflicts */
+    static String[][] merge3Input(int lines) {
+        String[] base = new String[lines];
+        String[] ours = new String[lines];
+        String[] theirs = new String[lines];
+        for (int i = 0; i < lines; i += 1) {
+            base[i] = "line " + i + "\n";
+            ours[i] = i % 100 == 0 ? "ours " + i + "\n" : base[i];
+            theirs[i] = i % 100 == 50 ? "theirs " + i + "\n" : base[i];
+        }
+        return new String[][]{base, ours, theirs};
+    }
+
+    /** Returns the contents of synthetic file number INDEX, FILEBYTES characters of numbered lines */
+    static String syntheticContents(int index, int fileBytes) {
+        StringBuilder contents = new StringBuilder(fileBytes);
+        String line = "file " + index + " line ";
+        while (contents.length() < fileBytes) {
+            contents.append(line).append(contents.length()).append('\n');
+        }
+        contents.setLength(fileBytes);
+        return contents.toString();
+    }
+
+    /** Returns the argument at INDEX of ARGS, or DEFAULTVALUE if there is none; NAME is the
+     *  argument's name in the usage message, and it must be a number no less than MINIMUM */
+    private static int intArg(String[] args, int index, String name, int defaultValue, int minimum) {
+        if (args.length <= index) {
+            return defaultValue;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(args[index]);
+        } catch (NumberFormatException e) {
+            throw new GitletException(name + " must be a number.");
+        }
+        if (value < minimum) {
+            throw new GitletException(name + " must be at least " + minimum + ".");
+        }
+        return value;
+    }
+
+    static void deleteRecursively(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
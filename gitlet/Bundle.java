@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/** A single file carrying history between repositories that cannot reach each other. A bundle
+ *  starts with a plain-text header: SIGNATURE, a line "-ID" for each prerequisite, a commit the
+ *  receiving repository must already have, a line "ID NAME" for each ref the bundle carries, and
+ *  a blank line. The rest of the file is a gzip-compressed Pack of the commits themselves and the
+ *  blobs they track that the prerequisites do not.
+ *  Both sides stream the pack one object at a time, so memory use does not grow with its size,
+ *  and each object is checked against its ID and written straight into the object store.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class Bundle {
+    static final String SIGNATURE = "# gitlet bundle v1";
+    /** Longest header line accepted when reading */
+    private static final int MAX_LINE_BYTES = 4096;
+
+    /** Commits the receiving repository must already have */
+    private final List<String> prerequisites;
+    /** The refs the bundle carries, by name, in the order they were written */
+    private final Map<String, String> refs;
+    /** Number of commits unbundled, once read */
+    private int commitCount;
+
+    private Bundle(List<String> prerequisites, Map<String, String> refs) {
+        this.prerequisites = prerequisites;
+        this.refs = refs;
+    }
+
+    Map<String, String> getRefs() {
+        return refs;
+    }
+
+    int getCommitCount() {
+        return commitCount;
+    }
+
+    /** Writes the commits IDS and blobs BLOBIDS of SOURCE to FILE as a bundle carrying REFS and
+     *  depending on PREREQUISITES */
+    static void create(File file, Repository source, List<String> ids, List<String> blobIds,
+                       Collection<String> prerequisites, Map<String, String> refs) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            StringBuilder header = new StringBuilder(SIGNATURE).append('\n');
+            for (String prerequisite : prerequisites) {
+                header.append('-').append(prerequisite).append('\n');
+            }
+            for (Map.Entry<String, String> ref : refs.entrySet()) {
+                header.append(ref.getValue()).append(' ').append(ref.getKey()).append('\n');
+            }
+            out.write(header.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+            GZIPOutputStream compressed = new GZIPOutputStream(out);
+            Pack.write(compressed, source, ids, blobIds);
+            compressed.finish();
+        } catch (IOException | RuntimeException e) {
+            file.delete(); // never leave a partial bundle that looks complete
+            if (e instanceof IOException) {
+                throw new UncheckedIOException((IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    /** Checks that TARGET has every prerequisite of the bundle in FILE, then imports its commits
+     *  into TARGET and returns the bundle; the caller decides what to do with its refs */
+    static Bundle unbundle(File file, Repository target) {
+        if (!file.isFile()) {
+            throw new GitletException("Bundle file not found.");
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            Bundle bundle = readHeader(in);
+            for (String prerequisite : bundle.prerequisites) {
+                if (!target.hasCommit(prerequisite)) {
+                    throw new GitletException("The bundle requires commit " + prerequisite
+                            + ", which this repository does not have.");
+                }
+            }
+            bundle.commitCount = Pack.read(new GZIPInputStream(in), target).size();
+            for (String tip : bundle.refs.values()) {
+                if (!target.hasCommit(tip)) {
+                    throw new GitletException("Bundle is corrupt.");
+                }
+            }
+            return bundle;
+        } catch (IOException e) {
+            throw new GitletException("Bundle is corrupt.");
+        }
+    }
+
+    private static Bundle readHeader(InputStream in) throws IOException {
+        if (!SIGNATURE.equals(readLine(in))) {
+            throw new GitletException("Not a Gitlet bundle.");
+        }
+        List<String> prerequisites = new ArrayList<>();
+        Map<String, String> refs = new LinkedHashMap<>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            if (line.startsWith("-") && line.length() == Utils.UID_LENGTH + 1) {
+                prerequisites.add(line.substring(1));
+            } else if (line.length() > Utils.UID_LENGTH + 1 && line.charAt(Utils.UID_LENGTH) == ' ') {
+                String name = line.substring(Utils.UID_LENGTH + 1);
+                if (!RefStore.isValidName(name)) { // checked before any object is read, so nothing is written
+                    throw new GitletException("Bundle has an invalid branch name.");
+                }
+                refs.put(name, line.substring(0, Utils.UID_LENGTH));
+            } else {
+                throw new GitletException("Bundle is corrupt.");
+            }
+        }
+        return new Bundle(prerequisites, refs);
+    }
+
+    /** Reads one header line from IN without reading past it, since the pack follows */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0 || line.size() == MAX_LINE_BYTES) {
+                throw new GitletException("Bundle is corrupt.");
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
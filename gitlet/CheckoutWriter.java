@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jdk.jfr.Event;
+
+/** Materializes the files of a commit into a directory, writing them on a pool of threads.
+ *  Each file is written to a temp file next to its destination and renamed into place, so a
+ *  reader never sees a half-written file. The amount of file contents waiting to be written is
+ *  bounded by a byte budget, so memory stays bounded no matter how large the commit is.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class CheckoutWriter {
+    /** System property for the number of writer threads */
+    static final String THREADS_PROPERTY = "gitlet.checkout.threads";
+    /** System property for the maximum number of bytes queued for writing */
+    static final String QUEUE_BYTES_PROPERTY = "gitlet.checkout.queueBytes";
+    /** Default byte budget of the write queue (64 MB) */
+    private static final int DEFAULT_QUEUE_BYTES = 64 << 20;
+    /** Checkouts with fewer files than this are written on the calling thread */
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private final File dir;
+    private final int threads;
+    private final int queueBytes;
+    /** Pool shared with other writers, or null to start a pool for each write */
+    private final ExecutorService sharedPool;
+    /** Where each file written is recorded for Flight Recorder */
+    private final Events events;
+    private long filesWritten;
+    private long bytesWritten;
+
+    public CheckoutWriter(File dir) {
+        this(dir, Integer.getInteger(THREADS_PROPERTY, Math.max(4, 2 * Runtime.getRuntime().availableProcessors())),
+                Integer.getInteger(QUEUE_BYTES_PROPERTY, DEFAULT_QUEUE_BYTES));
+    }
+
+    public CheckoutWriter(File dir, int threads, int queueBytes) {
+        this.dir = dir;
+        this.threads = Math.max(1, threads);
+        this.queueBytes = Math.max(1, queueBytes);
+        this.sharedPool = null;
+        this.events = new Events();
+    }
+
+    /** A writer that runs its writes on POOL, if not null, instead of starting a pool of its own.
+     *  POOL must not be running the caller, or a write may wait on itself. */
+    public CheckoutWriter(File dir, ExecutorService pool) {
+        this(dir, pool, new Events());
+    }
+
+    /** A writer like the one above that records the files it writes in EVENTS */
+    CheckoutWriter(File dir, ExecutorService pool, Events events) {
+        this.dir = dir;
+        this.threads = pool == null ? Math.max(1, Integer.getInteger(THREADS_PROPERTY,
+                Math.max(4, 2 * Runtime.getRuntime().availableProcessors()))) : Integer.MAX_VALUE;
+        this.queueBytes = Math.max(1, Integer.getInteger(QUEUE_BYTES_PROPERTY, DEFAULT_QUEUE_BYTES));
+        this.sharedPool = pool;
+        this.events = events;
+    }
+
+    /** Where the contents of the files to write are read from, by key, such as a blob ID */
+    public interface Source {
+        /** Returns the size in bytes of the contents under KEY, without reading them */
+        long size(String key);
+
+        /** Returns the contents under KEY */
+        byte[] read(String key);
+    }
+
+    /** Writes every file name -> contents pair in FILES into the directory */
+    public void write(Map<String, String> files) {
+        Map<String, String> keys = new HashMap<>();
+        for (String fileName : files.keySet()) {
+            keys.put(fileName, fileName); // each file's contents are kept under its own name
+        }
+        write(keys, new Source() {
+            @Override
+            public long size(String key) {
+                return utf8Length(files.get(key));
+            }
+
+            @Override
+            public byte[] read(String key) {
+                return files.get(key).getBytes(StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    /** Writes each file in FILES, a map of file name -> key, with the contents SOURCE reads under
+     *  its key. On the pool, a file's contents are only read once its size fits in the byte budget,
+     *  by the thread that writes them, so at most the budget is held in memory at once. */
+    public void write(Map<String, String> files, Source source) {
+        if (threads == 1 || files.size() < PARALLEL_THRESHOLD) {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                writeFile(entry.getKey(), source.read(entry.getValue()));
+            }
+            return;
+        }
+        ExecutorService pool = sharedPool != null ? sharedPool : Executors.newFixedThreadPool(threads);
+        Semaphore budget = new Semaphore(queueBytes);
+        Semaphore finished = new Semaphore(0);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        int submitted = 0;
+        try {
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                if (failure.get() != null) {
+                    break;
+                }
+                int cost = (int) Math.min(queueBytes, Math.max(1, source.size(entry.getValue())));
+                budget.acquireUninterruptibly(cost); // blocks while too many bytes are being read or written
+                pool.execute(() -> {
+                    try {
+                        writeFile(entry.getKey(), source.read(entry.getValue()));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        budget.release(cost);
+                        finished.release();
+                    }
+                });
+                submitted += 1;
+            }
+        } finally {
+            finished.acquireUninterruptibly(submitted);
+            if (pool != sharedPool) {
+                pool.shutdown();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /** Returns the number of files written so far */
+    public synchronized long getFilesWritten() {
+        return filesWritten;
+    }
+
+    /** Returns the number of bytes written so far */
+    public synchronized long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /** Writes BYTES to a temp file beside FILENAME and atomically renames it into place */
+    private void writeFile(String fileName, byte[] bytes) {
+        Event event = events.begin(Events.CHECKOUT_WRITE);
+        Path target = new File(dir, fileName).toPath();
+        try {
+            Path parent = target.getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, ".gitlet-", ".tmp");
+            try {
+                Files.write(temp, bytes);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        synchronized (this) {
+            filesWritten += 1;
+            bytesWritten += bytes.length;
+        }
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, fileName, (long) bytes.length);
+        }
+    }
+
+    /** Returns the number of bytes CONTENTS takes in UTF-8, without encoding it */
+    private static long utf8Length(String contents) {
+        long length = 0;
+        for (int i = 0; i < contents.length(); i += 1) {
+            char c = contents.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < contents.length()
+                    && Character.isLowSurrogate(contents.charAt(i + 1))) {
+                length += 4;
+                i += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
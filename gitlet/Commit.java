@@ -1,8 +1,9 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** Represents a gitlet commit object.
@@ -12,26 +13,16 @@ public class Commit implements Serializable {
 
     private final String message;
     private final String timestamp;
+    /** Tracked file names mapped to the IDs of the blobs holding their contents */
     private final Map<String, String> blobMap;
-    private final String parent1;
-    private final String parent2;
-    private final StagingArea stagingArea = new StagingArea();
+    /** IDs of the parent commits: none for the initial commit, the previous head first, then any merged branches */
+    private final List<String> parents;
 
-    public Commit(String message, String timestamp, Map<String, String> blobMap, String parent1, String parent2) {
+    public Commit(String message, String timestamp, Map<String, String> blobMap, List<String> parents) {
         this.message = message;
         this.timestamp = timestamp;
         this.blobMap = new HashMap<>(blobMap);
-        this.parent1 = parent1;
-        this.parent2 = parent2;
-    }
-
-    /** create new commit file and update which commit file the head points to */
-    public void updateCommits(Commit committing) {
-        File commitFile = new File(Repository.COMMIT_DIR, getId(committing));
-        Utils.writeObject(commitFile, committing);
-        Utils.writeContents(Repository.HEAD, getId(committing));
-        stagingArea.clearStage();
-        stagingArea.save();
+        this.parents = new ArrayList<>(parents);
     }
 
     public String getId(Commit commit) {
@@ -48,11 +39,15 @@ public class Commit implements Serializable {
     }
 
     public String getParent1() {
-        return this.parent1;
+        return parents.isEmpty() ? null : parents.get(0);
     }
 
     public String getParent2() {
-        return this.parent2;
+        return parents.size() < 2 ? null : parents.get(1);
+    }
+
+    public List<String> getParents() {
+        return this.parents;
     }
 
     public Map<String, String> getBlobMap() {
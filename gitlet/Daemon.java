@@ -0,0 +1,320 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** Keeps a repository resident and runs the commands sent to it over a Unix domain socket in
+ *  the .gitlet directory, so scripted workflows pay for JVM startup, class loading and reading
+ *  the staging area once instead of on every command. Each connection carries one command: the
+ *  client sends its arguments, and the daemon streams back the command's output in frames,
+ *  followed by its exit status. Commands that only read the repository share a read lock and
+ *  run concurrently; every other command holds the write lock and runs alone.
+ *  While a daemon is running, all commands in its repository should go through it, since the
+ *  staging area it holds in memory is not reread from disk. Relative paths in forwarded commands
+ *  are taken from the repository's root, which is where clients forward from. Commands run with
+ *  --trace are refused while a daemon runs, since they are counted in the client's process.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class Daemon {
+    /** Name of the socket file in the .gitlet directory */
+    static final String SOCKET_NAME = "daemon.sock";
+    /** Longest argument list a client may send */
+    private static final int MAX_ARGS = 4096;
+    /** Largest chunk of output sent in one frame */
+    private static final int FRAME_BYTES = 8192;
+    private static final byte OUTPUT_FRAME = 'o';
+    private static final byte EXIT_FRAME = 'x';
+
+    private final Repository repository;
+    private final File socketFile;
+    /** The repository's output stream, which each command's thread routes to its client */
+    private final RoutingPrintStream routed = new RoutingPrintStream(System.out);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+    private volatile ServerSocketChannel server;
+
+    /** A daemon for the repository whose working directory is ROOT */
+    public Daemon(File root) {
+        this.repository = new Repository(root, routed, null);
+        this.socketFile = new File(repository.getGitletDir(), SOCKET_NAME);
+    }
+
+    /** Accepts commands until a client sends "daemon stop" */
+    public void serve() {
+        if (isRunning(repository.getGitletDir())) {
+            throw new GitletException("A daemon is already running in this repository.");
+        }
+        socketFile.delete(); // left behind by a daemon that was killed, if it exists
+        repository.lock(); // other processes must not change what the daemon holds in memory
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socketFile.toPath()));
+            socketFile.deleteOnExit();
+            server = channel;
+            System.out.println("Gitlet daemon listening on " + socketFile.getPath());
+            while (channel.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (AsynchronousCloseException e) {
+                    break; // stopped
+                }
+                workers.execute(() -> handle(client));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            workers.shutdown(); // commands already running are left to finish
+            socketFile.delete();
+            repository.unlock();
+        }
+    }
+
+    /** Stops accepting commands */
+    private void stop() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Reads one command from CLIENT, runs it with its output framed back to CLIENT, and sends its status */
+    private void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream request = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream response = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            String[] args = readArgs(request);
+            PrintStream commandOut = new PrintStream(new FrameOutputStream(response));
+            int status = run(args, commandOut);
+            commandOut.flush();
+            response.writeByte(EXIT_FRAME);
+            response.writeInt(status);
+            response.flush();
+        } catch (IOException e) {
+            return; // the client went away; there is no one to report to
+        }
+    }
+
+    private static String[] readArgs(DataInputStream request) throws IOException {
+        int count = request.readInt();
+        if (count < 0 || count > MAX_ARGS) {
+            throw new IOException("Malformed request");
+        }
+        String[] args = new String[count];
+        for (int i = 0; i < count; i += 1) {
+            args[i] = request.readUTF();
+        }
+        return args;
+    }
+
+    /** Runs ARGS against the resident repository with this thread's share of its output sent to
+     *  COMMANDOUT, and returns the exit status the command would have had if run on its own */
+    private int run(String[] args, PrintStream commandOut) {
+        if (args.length == 2 && args[0].equals("daemon") && args[1].equals("stop")) {
+            commandOut.println("Daemon stopped.");
+            stop();
+            return 0;
+        }
+        Lock held = isReadOnly(args) ? lock.readLock() : lock.writeLock();
+        held.lock();
+        routed.route(commandOut);
+        try {
+            Main.run(repository, args);
+            return 0;
+        } catch (GitletException e) {
+            commandOut.println(e.getMessage());
+            return 0;
+        } catch (RuntimeException e) {
+            commandOut.println(e);
+            return 1;
+        } finally {
+            routed.route(null);
+            if (!isReadOnly(args)) {
+                repository.sync(); // the daemon holds the repository's lock throughout, so no unlock syncs
+            }
+            held.unlock();
+        }
+    }
+
+    /** Returns whether ARGS names a command that never changes the repository or working directory */
+    private static boolean isReadOnly(String[] args) {
+        if (args.length == 0) {
+            return true;
+        }
+        switch (args[0]) {
+            case "log":
+            case "global-log":
+            case "find":
+            case "status":
+            case "diff":
+            case "reflog":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Sends ARGS to the daemon serving the repository in GITLETDIR, if one is running, and copies
+     *  its output to OUT. Returns the command's exit status, or -1 if no daemon answered. */
+    static int forward(File gitletDir, String[] args, PrintStream out) {
+        File socket = new File(gitletDir, SOCKET_NAME);
+        if (!socket.exists()) {
+            return -1;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException e) {
+            return -1; // stale socket; run the command here instead
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+            DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] buffer = new byte[FRAME_BYTES];
+            while (response.readByte() == OUTPUT_FRAME) {
+                int length = response.readInt();
+                response.readFully(buffer, 0, length);
+                out.write(buffer, 0, length);
+            }
+            out.flush();
+            return response.readInt();
+        } catch (IOException e) {
+            throw new GitletException("Lost connection to the daemon.");
+        }
+    }
+
+    /** Returns whether a daemon is serving the repository in GITLETDIR */
+    static boolean isRunning(File gitletDir) {
+        File socket = new File(gitletDir, SOCKET_NAME);
+        return socket.exists() && isAnswering(socket);
+    }
+
+    private static boolean isAnswering(File socket) {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath()))) {
+            return channel.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** An output stream that each thread can send somewhere of its own; threads that have not
+     *  been routed anywhere write to the daemon's own standard output */
+    private static class RoutingPrintStream extends PrintStream {
+        private final ThreadLocal<PrintStream> target = new ThreadLocal<>();
+
+        RoutingPrintStream(PrintStream fallback) {
+            super(fallback, true);
+        }
+
+        /** Sends this thread's output to STREAM, or back to the fallback if STREAM is null */
+        void route(PrintStream stream) {
+            if (stream == null) {
+                target.remove();
+            } else {
+                target.set(stream);
+            }
+        }
+
+        @Override
+        public void write(int b) {
+            PrintStream stream = target.get();
+            if (stream == null) {
+                super.write(b);
+            } else {
+                stream.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+            PrintStream stream = target.get();
+            if (stream == null) {
+                super.write(buf, off, len);
+            } else {
+                stream.write(buf, off, len);
+            }
+        }
+
+        @Override
+        public void flush() {
+            PrintStream stream = target.get();
+            if (stream == null) {
+                super.flush();
+            } else {
+                stream.flush();
+            }
+        }
+    }
+
+    /** Buffers output and sends it as length-prefixed frames, one each time the buffer fills */
+    private static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream response;
+        private final byte[] buffer = new byte[FRAME_BYTES];
+        private int count;
+
+        FrameOutputStream(DataOutputStream response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                sendFrame();
+            }
+            buffer[count] = (byte) b;
+            count += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    sendFrame();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sendFrame();
+        }
+
+        private void sendFrame() throws IOException {
+            if (count > 0) {
+                response.writeByte(OUTPUT_FRAME);
+                response.writeInt(count);
+                response.write(buffer, 0, count);
+                response.flush();
+                count = 0;
+            }
+        }
+    }
+}
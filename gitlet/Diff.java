@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Line-based diff using Myers' O(ND) algorithm in its linear-space form: each subproblem
+ *  finds the middle snake of the edit path with a forward and a backward search, then the
+ *  halves on either side of it are solved the same way. Lines are hashed to ints once, so
+ *  the inner loops compare ints rather than strings, and common prefixes and suffixes are
+ *  stripped before searching.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class Diff {
+
+    /** A region where lines [aStart, aEnd) of the first sequence were replaced by
+     *  lines [bStart, bEnd) of the second. Either range may be empty. */
+    public static class Hunk {
+        final int aStart;
+        final int aEnd;
+        final int bStart;
+        final int bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+    }
+
+    private final int[] a;
+    private final int[] b;
+    /** Furthest reaching x on each diagonal, for the forward and backward searches */
+    private final int[] forward;
+    private final int[] backward;
+    private final List<Hunk> hunks = new ArrayList<>();
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.forward = new int[2 * (a.length + b.length) + 3];
+        this.backward = new int[forward.length];
+    }
+
+    /** Splits TEXT into lines, each keeping its trailing newline */
+    public static String[] lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /** Returns the hunks, in order, that turn lines A into lines B */
+    public static List<Hunk> diff(String[] a, String[] b) {
+        Map<String, Integer> ids = new HashMap<>();
+        Diff diff = new Diff(hash(a, ids), hash(b, ids));
+        diff.solve();
+        return diff.hunks;
+    }
+
+    /** Replaces each line by a small int that is equal for equal lines */
+    private static int[] hash(String[] lines, Map<String, Integer> ids) {
+        int[] hashed = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            hashed[i] = id;
+        }
+        return hashed;
+    }
+
+    /** Solves subproblems from an explicit stack, so long inputs cannot overflow the call stack */
+    private void solve() {
+        Deque<int[]> toSolve = new ArrayDeque<>();
+        toSolve.push(new int[]{0, a.length, 0, b.length});
+        while (!toSolve.isEmpty()) {
+            int[] range = toSolve.pop();
+            int aLo = range[0];
+            int aHi = range[1];
+            int bLo = range[2];
+            int bHi = range[3];
+            while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) { // common prefix
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) { // common suffix
+                aHi -= 1;
+                bHi -= 1;
+            }
+            if (aLo == aHi || bLo == bHi) {
+                if (aLo != aHi || bLo != bHi) {
+                    addHunk(aLo, aHi, bLo, bHi);
+                }
+                continue;
+            }
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            // push the right half first so the left half, and its hunks, come out first
+            toSolve.push(new int[]{aLo + snake[2], aHi, bLo + snake[3], bHi});
+            toSolve.push(new int[]{aLo, aLo + snake[0], bLo, bLo + snake[1]});
+        }
+    }
+
+    /** Appends a hunk, joining it to the previous one when they touch */
+    private void addHunk(int aStart, int aEnd, int bStart, int bEnd) {
+        if (!hunks.isEmpty()) {
+            Hunk last = hunks.get(hunks.size() - 1);
+            if (last.aEnd == aStart && last.bEnd == bStart) {
+                hunks.set(hunks.size() - 1, new Hunk(last.aStart, aEnd, last.bStart, bEnd));
+                return;
+            }
+        }
+        hunks.add(new Hunk(aStart, aEnd, bStart, bEnd));
+    }
+
+    /** Returns {x, y, u, v}: the middle snake of a[aLo, aHi) against b[bLo, bHi) runs from
+     *  (x, y) to (u, v), relative to (aLo, bLo). Both ranges must be non-empty. */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int offset = n + m + 1;
+        int maxD = (n + m + 1) / 2;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= maxD; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1])) {
+                    x = forward[offset + k + 1];
+                } else {
+                    x = forward[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                int startX = x;
+                int startY = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                forward[offset + k] = x;
+                int kr = delta - k;
+                if (odd && kr >= -(d - 1) && kr <= d - 1 && x + backward[offset + kr] >= n) {
+                    return new int[]{startX, startY, x, y};
+                }
+            }
+            for (int kr = -d; kr <= d; kr += 2) {
+                int xr;
+                if (kr == -d || (kr != d && backward[offset + kr - 1] < backward[offset + kr + 1])) {
+                    xr = backward[offset + kr + 1];
+                } else {
+                    xr = backward[offset + kr - 1] + 1;
+                }
+                int yr = xr - kr;
+                int startXr = xr;
+                int startYr = yr;
+                while (xr < n && yr < m && a[aHi - 1 - xr] == b[bHi - 1 - yr]) {
+                    xr += 1;
+                    yr += 1;
+                }
+                backward[offset + kr] = xr;
+                int k = delta - kr;
+                if (!odd && k >= -d && k <= d && xr + forward[offset + k] >= n) {
+                    return new int[]{n - xr, m - yr, n - startXr, m - startYr};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake found");
+    }
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import jdk.jfr.Event;
+
+/** Writes a repository's objects, refs and staging area so that a crash never leaves one
+ *  truncated. Every file is written to NAME.lock beside it and renamed over NAME, so readers see
+ *  the old contents or the new, never a mix (writers hold the RepositoryLock, so a .lock file
+ *  already in place can only be left from a crash, and is overwritten). How much is forced to
+ *  disk depends on the durability policy, read from the POLICY_PROPERTY system property:
+ *  <ul>
+ *  <li>none: nothing is synced; the operating system writes data back when it likes.</li>
+ *  <li>batch (the default): files and their directories are synced together by sync(), once per
+ *  command or batch of commands, when the repository's write lock is released, and objects are
+ *  synced before any ref is replaced, so a commit touching many objects pays for one grouped
+ *  sync of them rather than one per file.</li>
+ *  <li>always: every file, and its directory, is synced as it is written.</li>
+ *  </ul>
+ *  @author Liana Kong and Mischa Mikami
+ */
+class DurableWriter {
+    /** System property naming the durability policy */
+    static final String POLICY_PROPERTY = "gitlet.durability";
+    static final String NONE = "none";
+    static final String BATCH = "batch";
+    static final String ALWAYS = "always";
+    static final String LOCK_SUFFIX = ".lock";
+
+    private final String policy;
+    private final Trace trace;
+    private final Events events;
+    /** Files written since the last sync, and the directories whose entries changed with them */
+    private final Set<Path> unsyncedFiles = new LinkedHashSet<>();
+    private final Set<Path> unsyncedDirs = new LinkedHashSet<>();
+    /** Whether any of the unsynced files is an object rather than a ref */
+    private boolean unsyncedObjects;
+
+    DurableWriter(Trace trace, Events events) {
+        this(System.getProperty(POLICY_PROPERTY, BATCH), trace, events);
+    }
+
+    DurableWriter(String policy, Trace trace, Events events) {
+        if (!policy.equals(NONE) && !policy.equals(BATCH) && !policy.equals(ALWAYS)) {
+            throw new GitletException("Unknown durability policy " + policy + "; use none, batch or always.");
+        }
+        this.policy = policy;
+        this.trace = trace;
+        this.events = events;
+    }
+
+    /** Writes CONTENTS as the new immutable object TARGET */
+    synchronized void writeObject(File target, byte[] contents) {
+        long start = trace.start();
+        Event event = events.begin(Events.OBJECT_WRITE);
+        replace(target, contents);
+        trace.end("writeObject", start, contents.length);
+        if (Events.shouldCommit(event)) { // the object store is named after its kind
+            Events.commit(event, target.getName(), target.getParentFile().getName(), (long) contents.length);
+        }
+        unsyncedObjects |= policy.equals(BATCH);
+    }
+
+    /** Replaces the ref or other mutable file TARGET with CONTENTS. Objects written before it are
+     *  synced first, so a ref that survives a crash never names an object that did not. */
+    synchronized void writeRef(File target, byte[] contents) {
+        if (unsyncedObjects) {
+            sync();
+        }
+        long start = trace.start();
+        replace(target, contents);
+        trace.end("writeRef", start, contents.length);
+    }
+
+    synchronized void writeRef(File target, String contents) {
+        writeRef(target, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Appends CONTENTS to the log TARGET, creating it if need be. Unlike other files, logs grow in
+     *  place; a crash can lose the end of the last record, which readers and later appends ignore. */
+    synchronized void append(File target, byte[] contents) {
+        Path path = target.toPath();
+        Path dir = path.toAbsolutePath().getParent();
+        boolean created = !Files.exists(path);
+        long start = trace.start();
+        try {
+            Files.write(path, contents, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (policy.equals(ALWAYS)) {
+            force(path);
+            if (created) {
+                force(dir);
+            }
+        } else if (policy.equals(BATCH)) {
+            unsyncedFiles.add(path);
+            if (created) {
+                unsyncedDirs.add(dir);
+            }
+        }
+        trace.end("append log", start, contents.length);
+    }
+
+    /** Forces every file written since the last sync, and then their directories, to disk */
+    synchronized void sync() {
+        long start = trace.start();
+        int synced = unsyncedFiles.size() + unsyncedDirs.size();
+        try {
+            for (Path file : unsyncedFiles) {
+                if (Files.exists(file)) {
+                    force(file);
+                }
+            }
+            for (Path dir : unsyncedDirs) {
+                force(dir);
+            }
+        } finally {
+            unsyncedFiles.clear();
+            unsyncedDirs.clear();
+            unsyncedObjects = false;
+            if (synced > 0) {
+                trace.end("sync", start, 0);
+            }
+        }
+    }
+
+    private void replace(File target, byte[] contents) {
+        Path path = target.toPath();
+        Path lock = Path.of(target.getPath() + LOCK_SUFFIX);
+        Path dir = path.toAbsolutePath().getParent();
+        try {
+            Files.write(lock, contents);
+            if (policy.equals(ALWAYS)) {
+                force(lock);
+            }
+            Files.move(lock, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (policy.equals(ALWAYS)) {
+            force(dir);
+        } else if (policy.equals(BATCH)) {
+            unsyncedFiles.add(path);
+            unsyncedDirs.add(dir);
+        }
+    }
+
+    /** Forces the file or directory at PATH to disk. Platforms that cannot open a directory
+     *  for syncing make renames durable by themselves, so that failure is ignored. */
+    private static void force(Path path) {
+        boolean isDirectory = Files.isDirectory(path);
+        try (FileChannel channel = FileChannel.open(path,
+                isDirectory ? StandardOpenOption.READ : StandardOpenOption.WRITE)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!isDirectory) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import jdk.jfr.AnnotationElement;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventFactory;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.ValueDescriptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Java Flight Recorder events for what a repository does, so that a recording of a JVM running
+ *  Gitlet shows its commands, object reads and writes, hashing, directory scans, merge-base
+ *  searches and checkout writes alongside garbage collection and I/O. They are recorded at the
+ *  same points as the Trace counts. Like any JFR event they are controlled by the recording's
+ *  settings, by name, for example gitlet.ObjectRead#enabled=false or gitlet.Command#threshold=10 ms.
+ *  <p>
+ *  The event types are defined at run time with EventFactory rather than as subclasses of Event,
+ *  because JFR gives every such subclass a mutable static field, and they are only defined once
+ *  Flight Recorder is running in this JVM: until then begin returns null and every event site
+ *  costs a flag test. One Events is shared by the repositories a command opens, so each type is
+ *  defined once per process, not once per repository. The frequent event types leave out stack
+ *  traces, which would cost more than the work they record.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class Events {
+    /** One command run against a repository: command, succeeded */
+    static final int COMMAND = 0;
+    /** A commit or blob read: object ID, object type, size */
+    static final int OBJECT_READ = 1;
+    /** An object written: object ID, object type, size */
+    static final int OBJECT_WRITE = 2;
+    /** A SHA-1 of an object or file contents: size */
+    static final int HASH = 3;
+    /** A directory listing: directory, entries */
+    static final int DIRECTORY_SCAN = 4;
+    /** A search for the split point of a merge: head, branch, merge base */
+    static final int MERGE_BASE = 5;
+    /** One file written into the working directory by a checkout: file, size */
+    static final int CHECKOUT_WRITE = 6;
+    private static final int TYPES = 7;
+
+    /** The factory of each event type, once defined */
+    private final EventFactory[] factories = new EventFactory[TYPES];
+
+    /** Starts an event of TYPE and returns it, or returns null if Flight Recorder is not running */
+    Event begin(int type) {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Event event = factory(type).newEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Returns whether EVENT, begun by begin, is wanted by a recording, so its values should be computed */
+    static boolean shouldCommit(Event event) {
+        return event != null && event.shouldCommit();
+    }
+
+    /** Sets the fields of EVENT, which shouldCommit accepted, to VALUES, in the order its type
+     *  lists them, and records it */
+    static void commit(Event event, Object... values) {
+        for (int i = 0; i < values.length; i += 1) {
+            event.set(i, values[i]);
+        }
+        event.commit();
+    }
+
+    private synchronized EventFactory factory(int type) {
+        if (factories[type] == null) {
+            factories[type] = define(type);
+        }
+        return factories[type];
+    }
+
+    private static EventFactory define(int type) {
+        switch (type) {
+            case COMMAND:
+                return define("gitlet.Command", "Gitlet Command", "One command run against a repository", true,
+                        field(String.class, "command", "Command"), field(boolean.class, "succeeded", "Succeeded"));
+            case OBJECT_READ:
+                return define("gitlet.ObjectRead", "Gitlet Object Read", "A commit or blob read", false,
+                        field(String.class, "objectId", "Object ID"), field(String.class, "objectType", "Object Type"),
+                        bytesField("size", "Size"));
+            case OBJECT_WRITE:
+                return define("gitlet.ObjectWrite", "Gitlet Object Write", "An object written", false,
+                        field(String.class, "objectId", "Object ID"), field(String.class, "objectType", "Object Type"),
+                        bytesField("size", "Size"));
+            case HASH:
+                return define("gitlet.Hash", "Gitlet Hash", "SHA-1 of an object or file contents", false,
+                        bytesField("size", "Size"));
+            case DIRECTORY_SCAN:
+                return define("gitlet.DirectoryScan", "Gitlet Directory Scan", "A directory listing", true,
+                        field(String.class, "directory", "Directory"), field(int.class, "entries", "Entries"));
+            case MERGE_BASE:
+                return define("gitlet.MergeBase", "Gitlet Merge Base", "Search for the split point of a merge", true,
+                        field(String.class, "head", "Head"), field(String.class, "branch", "Branch"),
+                        field(String.class, "base", "Merge Base"));
+            case CHECKOUT_WRITE:
+                return define("gitlet.CheckoutWrite", "Gitlet Checkout Write",
+                        "One file written into the working directory by a checkout", false,
+                        field(String.class, "fileName", "File"), bytesField("size", "Size"));
+            default:
+                throw new IllegalArgumentException("No event type " + type);
+        }
+    }
+
+    private static EventFactory define(String name, String label, String description, boolean stackTrace,
+                                       ValueDescriptor... fields) {
+        List<AnnotationElement> annotations = new ArrayList<>();
+        annotations.add(new AnnotationElement(Name.class, name));
+        annotations.add(new AnnotationElement(Label.class, label));
+        annotations.add(new AnnotationElement(Description.class, description));
+        annotations.add(new AnnotationElement(Category.class, new String[]{"Gitlet"}));
+        annotations.add(new AnnotationElement(StackTrace.class, stackTrace));
+        return EventFactory.create(annotations, List.of(fields));
+    }
+
+    private static ValueDescriptor field(Class<?> type, String name, String label) {
+        return new ValueDescriptor(type, name, List.of(new AnnotationElement(Label.class, label)));
+    }
+
+    private static ValueDescriptor bytesField(String name, String label) {
+        return new ValueDescriptor(long.class, name, List.of(new AnnotationElement(Label.class, label),
+                new AnnotationElement(DataAmount.class, DataAmount.BYTES)));
+    }
+}
@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Runs one command in every repository found under a directory, in a single process.
+ *  Repositories are run concurrently, at most THREADS_PROPERTY at a time, each with its output
+ *  collected separately; the outputs are printed in path order, each under a header naming
+ *  the repository. Checkouts in all the repositories share one pool of writer threads.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class ForEach {
+    /** System property for the number of repositories worked on at once */
+    static final String THREADS_PROPERTY = "gitlet.foreach.threads";
+
+    private final File root;
+    private final PrintStream out;
+    private final int threads;
+
+    public ForEach(File root, PrintStream out) {
+        this.root = root.getAbsoluteFile();
+        this.out = out;
+        this.threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY,
+                Math.max(4, 2 * Runtime.getRuntime().availableProcessors())));
+    }
+
+    /** Runs the command in ARGS in every repository under the root */
+    public void run(String[] args) {
+        if (args[0].equals("foreach") || args[0].equals("daemon") || (args[0].equals("batch") && args.length == 1)) {
+            throw new GitletException("Cannot run " + args[0] + " in every repository.");
+        }
+        List<File> repositories = discover();
+        if (repositories.isEmpty()) {
+            throw new GitletException("No Gitlet repositories found.");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, repositories.size()));
+        ExecutorService checkoutPool = Executors.newFixedThreadPool(threads);
+        Events events = new Events();
+        try {
+            List<Future<String>> outputs = new ArrayList<>();
+            for (File repository : repositories) {
+                outputs.add(pool.submit(() -> runOne(repository, args, checkoutPool, events)));
+            }
+            for (int i = 0; i < repositories.size(); i += 1) {
+                if (i > 0) {
+                    out.println();
+                }
+                Path relative = root.toPath().relativize(repositories.get(i).toPath());
+                out.println("=== " + (relative.toString().isEmpty() ? "." : relative) + " ===");
+                out.print(await(outputs.get(i)));
+            }
+            out.flush();
+        } finally {
+            pool.shutdown();
+            checkoutPool.shutdown();
+        }
+    }
+
+    /** Runs ARGS in the repository at REPOSITORYROOT and returns everything it printed */
+    private static String runOne(File repositoryRoot, String[] args, ExecutorService checkoutPool, Events events) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream repositoryOut = new PrintStream(bytes, true);
+        try {
+            Main.run(new Repository(repositoryRoot, repositoryOut, checkoutPool, events), args);
+        } catch (GitletException e) {
+            repositoryOut.println(e.getMessage());
+        } catch (RuntimeException e) {
+            repositoryOut.println(e);
+        }
+        repositoryOut.flush();
+        return bytes.toString();
+    }
+
+    private static String await(Future<String> output) {
+        try {
+            return output.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitletException("Interrupted.");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /** Returns the working directories of the repositories under the root, in path order.
+     *  The search does not descend into a repository once it has found one. */
+    private List<File> discover() {
+        List<File> repositories = new ArrayList<>();
+        if (!root.isDirectory()) {
+            throw new GitletException("Directory does not exist.");
+        }
+        try {
+            Files.walkFileTree(root.toPath(), new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (Files.isDirectory(dir.resolve(Repository.GITLET_DIR_NAME))) {
+                        repositories.add(dir.toFile());
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE; // unreadable directories are skipped
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(repositories);
+        return repositories;
+    }
+}
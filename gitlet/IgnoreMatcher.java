@@ -0,0 +1,241 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** The patterns of a .gitletignore file, compiled once into a trie of path segments.
+ *  Each line is a glob: '*' matches any run of characters within a segment, '?' matches one
+ *  character, '[abc]' or '[a-z]' matches a character class, '[!abc]' any character outside one,
+ *  and '**' matches any number of segments. A pattern containing no '/' (other than a trailing
+ *  one) matches at any depth; a trailing '/' only matches directories. A pattern starting with
+ *  '!' re-includes what an earlier pattern ignored; when several patterns match, the last one
+ *  decides. Blank lines and lines starting with '#' are skipped, and a leading '\' escapes a
+ *  literal '!' or '#'. Matching a path walks the trie once, segment by segment, so the cost does
+ *  not grow with the number of patterns, and an ignored directory rules out everything under it,
+ *  as git does: a file in it cannot be re-included.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class IgnoreMatcher {
+    /** Name of the ignore file, at the top of the working directory */
+    static final String IGNORE_FILE = ".gitletignore";
+
+    private final Node root = new Node();
+    /** Number of patterns added, each numbered in order so the last match can win */
+    private int patterns;
+
+    /** Compiles the .gitletignore file in DIR, if there is one */
+    public IgnoreMatcher(File dir) {
+        File file = new File(dir, IGNORE_FILE);
+        if (file.isFile()) {
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                add(line.strip());
+            }
+        }
+    }
+
+    /** Returns whether the file (or, if ISDIRECTORY, the directory) at relative PATH is ignored */
+    public boolean isIgnored(String path, boolean isDirectory) {
+        if (patterns == 0) {
+            return false;
+        }
+        String[] segments = path.split("/");
+        Set<Node> active = new HashSet<>();
+        addWithAnyDepth(active, root);
+        for (int i = 0; i < segments.length; i += 1) {
+            boolean last = i == segments.length - 1;
+            Set<Node> next = new HashSet<>();
+            for (Node node : active) {
+                node.step(segments[i], next);
+            }
+            boolean directory = !last || isDirectory;
+            int lastMatch = -1;
+            boolean ignored = false;
+            for (Node node : next) {
+                if (node.order > lastMatch) {
+                    lastMatch = node.order;
+                    ignored = !node.negated;
+                }
+                if (directory && node.directoryOrder > lastMatch) {
+                    lastMatch = node.directoryOrder;
+                    ignored = !node.directoryNegated;
+                }
+            }
+            if (ignored || last) { // an ignored parent directory ignores everything beneath it
+                return ignored;
+            }
+            if (next.isEmpty()) {
+                return false;
+            }
+            active = new HashSet<>();
+            for (Node node : next) {
+                addWithAnyDepth(active, node);
+            }
+        }
+        return false;
+    }
+
+    private void add(String pattern) {
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return;
+        }
+        boolean negated = pattern.startsWith("!");
+        if (negated || pattern.startsWith("\\!") || pattern.startsWith("\\#")) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        Node node = root;
+        if (!anchored) {
+            node = node.anyDepthChild();
+        }
+        for (String segment : pattern.split("/")) {
+            node = segment.equals("**") ? node.anyDepthChild() : node.child(segment);
+        }
+        if (directoryOnly) {
+            node.directoryOrder = patterns;
+            node.directoryNegated = negated;
+        } else {
+            node.order = patterns;
+            node.negated = negated;
+        }
+        patterns += 1;
+    }
+
+    /** Adds NODE to ACTIVE, along with the nodes reachable by letting a '**' match zero segments */
+    private static void addWithAnyDepth(Set<Node> active, Node node) {
+        if (active.add(node) && node.anyDepth != null) {
+            addWithAnyDepth(active, node.anyDepth);
+        }
+    }
+
+    /** One position in the trie: the segments matched so far by one or more patterns */
+    private static class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<String> globs = new ArrayList<>();
+        private final List<Node> globChildren = new ArrayList<>();
+        /** Child reached through '**' */
+        private Node anyDepth;
+        /** Whether this node was reached through '**', and so also matches any further segment */
+        private boolean loops;
+        /** Number of the last pattern ending here that matches files and directories, or -1 */
+        private int order = -1;
+        private boolean negated;
+        /** Number of the last pattern ending here with a trailing '/', matching only directories, or -1 */
+        private int directoryOrder = -1;
+        private boolean directoryNegated;
+
+        private Node child(String segment) {
+            if (!isGlob(segment)) {
+                return literals.computeIfAbsent(segment, s -> new Node());
+            }
+            int index = globs.indexOf(segment);
+            if (index >= 0) {
+                return globChildren.get(index);
+            }
+            Node child = new Node();
+            globs.add(segment);
+            globChildren.add(child);
+            return child;
+        }
+
+        private Node anyDepthChild() {
+            if (anyDepth == null) {
+                anyDepth = new Node();
+                anyDepth.loops = true;
+            }
+            return anyDepth;
+        }
+
+        /** Adds to NEXT every node reached by matching SEGMENT from this node */
+        private void step(String segment, Set<Node> next) {
+            Node literal = literals.get(segment);
+            if (literal != null) {
+                next.add(literal);
+            }
+            for (int i = 0; i < globs.size(); i += 1) {
+                if (globMatches(globs.get(i), 0, segment, 0)) {
+                    next.add(globChildren.get(i));
+                }
+            }
+            if (loops) {
+                next.add(this);
+            }
+        }
+    }
+
+    private static boolean isGlob(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('[') >= 0;
+    }
+
+    /** Returns whether GLOB, from index G, matches TEXT from index T */
+    private static boolean globMatches(String glob, int g, String text, int t) {
+        while (g < glob.length()) {
+            char c = glob.charAt(g);
+            if (c == '*') {
+                for (int i = t; i <= text.length(); i += 1) {
+                    if (globMatches(glob, g + 1, text, i)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (t >= text.length()) {
+                return false;
+            }
+            int close = c == '[' ? classEnd(glob, g) : -1;
+            if (close >= 0) {
+                boolean complement = glob.charAt(g + 1) == '!' || glob.charAt(g + 1) == '^';
+                int start = complement ? g + 2 : g + 1;
+                if (classContains(glob, start, close, text.charAt(t)) == complement) {
+                    return false;
+                }
+                g = close + 1;
+            } else if (c == '?' || c == text.charAt(t)) { // an unclosed '[' matches itself
+                g += 1;
+            } else {
+                return false;
+            }
+            t += 1;
+        }
+        return t == text.length();
+    }
+
+    /** Returns the index of the ']' closing the character class that starts at index OPEN of GLOB,
+     *  or -1 if it is not closed; a ']' first in the class, after any '!' or '^', is part of it */
+    private static int classEnd(String glob, int open) {
+        int first = open + 1;
+        if (first < glob.length() && (glob.charAt(first) == '!' || glob.charAt(first) == '^')) {
+            first += 1;
+        }
+        return glob.indexOf(']', first + 1);
+    }
+
+    /** Returns whether the character class in GLOB from index START to CLOSE, such as "a-z_", contains C */
+    private static boolean classContains(String glob, int start, int close, char c) {
+        for (int i = start; i < close; i += 1) {
+            if (i + 2 < close && glob.charAt(i + 1) == '-') {
+                if (glob.charAt(i) <= c && c <= glob.charAt(i + 2)) {
+                    return true;
+                }
+                i += 2;
+            } else if (glob.charAt(i) == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
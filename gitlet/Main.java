@@ -1,75 +1,47 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import jdk.jfr.Event;
+
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Liana Kong and Mischa Mikami */
 public class Main {
     public static void main(String[] args) {
         try {
+            String traceFormat = null;
+            if (args.length > 0 && args[0].startsWith("--trace")) {
+                traceFormat = traceFormat(args[0]);
+                args = Arrays.copyOfRange(args, 1, args.length);
+            }
             if (args.length == 0) {
                 throw new GitletException("Please enter a command.");
             }
-            Repository repository = new Repository();
-            String firstArg = args[0];
-            switch (firstArg) {
-                case "init":
-                    if (args.length != 1) {
-                        throw new GitletException("Incorrect operands.");
-                    }
-                    repository.init();
-                    break;
-                case "add":
-                    validate(args, 2);
-                    repository.add(args[1]);
-                    break;
-                case "rm":
-                    validate(args, 2);
-                    repository.remove(args[1]);
-                    break;
-                case "commit":
-                    validate(args, 2);
-                    repository.commit(args[1]);
-                    break;
-                case "log":
-                    validate(args, 1);
-                    repository.log();
-                    break;
-                case "global-log":
-                    validate(args, 1);
-                    repository.globalLog();
-                    break;
-                case "find":
-                    validate(args, 2);
-                    repository.find(args[1]);
-                    break;
-                case "status":
-                    validate(args, 1);
-                    repository.status();
-                    break;
-                case "restore":
-                    validateRestore(args);
-                    break;
-                case "branch":
-                    validate(args, 2);
-                    repository.branch(args[1]);
-                    break;
-                case "switch":
-                    validate(args, 2);
-                    repository.switching(args[1]);
-                    break;
-                case "rm-branch":
-                    validate(args, 2);
-                    repository.rmBranch(args[1]);
-                    break;
-                case "reset":
-                    validate(args, 2);
-                    repository.reset(args[1]);
-                    break;
-                case "merge":
-                    validate(args, 2);
-                    repository.merge(args[1]);
-                    break;
-                default:
-                    throw new GitletException("No command with that name exists.");
+            File root = new File(System.getProperty("user.dir"));
+            File gitletDir = new File(root, Repository.GITLET_DIR_NAME);
+            if (traceFormat != null && Daemon.isRunning(gitletDir)) {
+                // a traced command must run here to be counted, but the daemon holds the write lock
+                throw new GitletException("Cannot trace commands while a daemon is running.");
+            }
+            if (traceFormat == null && !runsLocally(args)) {
+                int status = Daemon.forward(gitletDir, args, System.out);
+                if (status > 0) {
+                    System.exit(status);
+                } else if (status == 0) {
+                    return;
+                }
+            }
+            Repository repository = new Repository(root);
+            if (traceFormat == null) {
+                run(repository, args);
+            } else {
+                runTraced(repository, args, traceFormat);
             }
         } catch (GitletException e) {
             System.out.println(e.getMessage());
@@ -77,37 +49,312 @@ public class Main {
         }
     }
 
-    /** Ensures number of arguments equals expected number of args and Gitlet repository is initialized */
-    private static void validate(String[] args, int n) {
+    /** Runs the command in ARGS against REPOSITORY, which prints its output. Errors are thrown as
+     *  GitletExceptions rather than printed or ending the process, so callers that run many
+     *  commands (the daemon, batches, embedders) keep going after them. */
+    static void run(Repository repository, String[] args) {
+        if (args.length == 0) {
+            throw new GitletException("Please enter a command.");
+        }
+        Event event = repository.getEvents().begin(Events.COMMAND);
+        boolean succeeded = false;
         try {
-            if (args.length != n) {
-                throw new GitletException("Incorrect operands.");
+            runLocked(repository, args);
+            succeeded = true;
+        } finally {
+            if (Events.shouldCommit(event)) {
+                Events.commit(event, args[0], succeeded);
             }
-            if (!Repository.GITLET_DIR.exists()) {
-                throw new GitletException("Not in an initialized Gitlet directory.");
-            }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
-            System.exit(0);
         }
     }
 
-    /** Validates restore, based on its specific cases */
-    private static void validateRestore(String[] args) {
-        Repository repository = new Repository();
+    /** Runs the command in ARGS, holding the write lock if it changes the repository; its writes
+     *  are synced when the outermost holder of the lock, such as a batch, releases it */
+    private static void runLocked(Repository repository, String[] args) {
+        if (!needsWriteLock(args[0])) {
+            dispatch(repository, args);
+            return;
+        }
+        repository.lock();
         try {
-            if (!Repository.GITLET_DIR.exists()) {
-                throw new GitletException("Not in an initialized Gitlet directory.");
-            } else if (args.length == 3 && args[1].equals("--")) { // case 1
-                repository.restore(args[2]);
-            } else if (args.length == 4 && args[2].equals("--")) { // case 2
-                repository.restore(args[1], args[3]);
-            } else {
+            dispatch(repository, args);
+        } finally {
+            repository.unlock();
+        }
+    }
+
+    /** Returns the format, table or json, that the --trace option OPTION asks for */
+    private static String traceFormat(String option) {
+        switch (option) {
+            case "--trace":
+            case "--trace=table":
+                return "table";
+            case "--trace=json":
+                return "json";
+            default:
                 throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Runs the command in ARGS with tracing on, then prints what it did to standard error in
+     *  FORMAT, even if the command failed */
+    private static void runTraced(Repository repository, String[] args, String format) {
+        Trace trace = repository.getTrace();
+        trace.enable();
+        long start = trace.start();
+        try {
+            run(repository, args);
+        } finally {
+            trace.end("command " + args[0], start, 0);
+            if (format.equals("json")) {
+                trace.printJson(System.err);
+            } else {
+                trace.printTable(System.err);
             }
-        } catch (GitletException e) {
-            System.out.print(e.getMessage());
-            System.exit(0);
+        }
+    }
+
+    /** Returns whether COMMAND changes this repository and so must hold its write lock. Readers
+     *  run lock-free, and batch, daemon and foreach take whatever locks they need themselves. */
+    private static boolean needsWriteLock(String command) {
+        switch (command) {
+            case "log":
+            case "global-log":
+            case "find":
+            case "status":
+            case "diff":
+            case "reflog":
+            case "batch":
+            case "daemon":
+            case "foreach":
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static void dispatch(Repository repository, String[] args) {
+        String firstArg = args[0];
+        switch (firstArg) {
+            case "init":
+                if (args.length != 1) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                repository.init();
+                break;
+            case "add":
+                validate(repository, args, 2);
+                repository.add(args[1]);
+                break;
+            case "rm":
+                validate(repository, args, 2);
+                repository.remove(args[1]);
+                break;
+            case "commit":
+                validate(repository, args, 2);
+                repository.commit(args[1]);
+                break;
+            case "log":
+                validate(repository, args, 1);
+                repository.log();
+                break;
+            case "global-log":
+                validate(repository, args, 1);
+                repository.globalLog();
+                break;
+            case "find":
+                validate(repository, args, 2);
+                repository.find(args[1]);
+                break;
+            case "status":
+                validate(repository, args, 1);
+                repository.status();
+                break;
+            case "restore":
+                validateRestore(repository, args);
+                break;
+            case "branch":
+                validate(repository, args, 2);
+                repository.branch(args[1]);
+                break;
+            case "switch":
+                validate(repository, args, 2);
+                repository.switching(args[1]);
+                break;
+            case "rm-branch":
+                validate(repository, args, 2);
+                repository.rmBranch(args[1]);
+                break;
+            case "reflog":
+                validate(repository, args, Math.min(2, args.length));
+                repository.reflog(args.length == 2 ? args[1] : "HEAD");
+                break;
+            case "pack-refs":
+                validate(repository, args, 1);
+                repository.packRefs();
+                break;
+            case "add-remote":
+                validate(repository, args, 3);
+                repository.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                validate(repository, args, 2);
+                repository.rmRemote(args[1]);
+                break;
+            case "fetch":
+                validate(repository, args, 3);
+                repository.fetch(args[1], args[2]);
+                break;
+            case "push":
+                validate(repository, args, 3);
+                repository.push(args[1], args[2]);
+                break;
+            case "pull":
+                validate(repository, args, 3);
+                repository.pull(args[1], args[2]);
+                break;
+            case "reset":
+                validate(repository, args, 2);
+                repository.reset(args[1]);
+                break;
+            case "merge":
+                validate(repository, args, Math.max(2, args.length));
+                repository.merge(Arrays.asList(args).subList(1, args.length));
+                break;
+            case "rerere":
+                validate(repository, args, 2);
+                repository.rerere(args[1]);
+                break;
+            case "diff":
+                validate(repository, args, Math.min(3, Math.max(1, args.length)));
+                if (args.length == 1) {
+                    repository.diff();
+                } else if (args.length == 2 && args[1].equals("--cached")) {
+                    repository.diffCached();
+                } else if (args.length == 3) {
+                    repository.diff(args[1], args[2]);
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "sparse-checkout":
+                validate(repository, args, Math.max(2, args.length));
+                repository.sparseCheckout(args[1], Arrays.asList(args).subList(2, args.length));
+                break;
+            case "clone": // creates the repository, so it need not exist yet
+                int first = 1;
+                boolean shared = false;
+                boolean partial = false;
+                for (; first < args.length && args[first].startsWith("--"); first += 1) {
+                    if (args[first].equals("--shared")) {
+                        shared = true;
+                    } else if (args[first].equals("--filter=blob:none")) {
+                        partial = true;
+                    } else {
+                        throw new GitletException("Incorrect operands.");
+                    }
+                }
+                String[] paths = Arrays.copyOfRange(args, first, args.length);
+                if (paths.length < 1 || paths.length > 2) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                Repository target = paths.length == 2
+                        ? new Repository(resolve(repository, paths[1]), repository.getOut(), null,
+                                repository.getEvents()) : repository;
+                target.cloneFrom(resolve(repository, paths[0]), shared, partial);
+                target.sync();
+                break;
+            case "bundle":
+                if (args.length == 4 && args[1].equals("create")) {
+                    validate(repository, args, 4);
+                    repository.bundleCreate(resolve(repository, args[2]), args[3]);
+                } else if (args.length == 3 && args[1].equals("unbundle")) {
+                    validate(repository, args, 3);
+                    repository.unbundle(resolve(repository, args[2]));
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            case "dissociate":
+                validate(repository, args, 1);
+                repository.dissociate();
+                break;
+            case "batch": // may start with init, so the repository need not exist yet
+                if (args.length > 2) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                runBatch(repository, args);
+                break;
+            case "foreach": // runs in the repositories it finds, so this one need not exist
+                if (args.length < 3) {
+                    throw new GitletException("Incorrect operands.");
+                }
+                new ForEach(resolve(repository, args[1]), repository.getOut()).run(Arrays.copyOfRange(args, 2, args.length));
+                break;
+            case "daemon":
+                validate(repository, args, Math.min(2, args.length));
+                if (args.length == 1) {
+                    new Daemon(repository.getRoot()).serve();
+                } else if (args[1].equals("stop")) {
+                    throw new GitletException("No daemon is running.");
+                } else {
+                    throw new GitletException("Incorrect operands.");
+                }
+                break;
+            default:
+                throw new GitletException("No command with that name exists.");
+        }
+    }
+
+    /** Returns whether ARGS must run in this process rather than be sent to a daemon: starting
+     *  a daemon, and batches read from standard input, which a daemon cannot see */
+    private static boolean runsLocally(String[] args) {
+        return args.length == 1 && (args[0].equals("daemon") || args[0].equals("batch"));
+    }
+
+    /** Runs the commands in the file named in ARGS, or on standard input if there is none */
+    private static void runBatch(Repository repository, String[] args) {
+        if (args.length == 1) {
+            new Batch(repository).run(new BufferedReader(new InputStreamReader(System.in)));
+            return;
+        }
+        File script = resolve(repository, args[1]);
+        if (!script.isFile()) {
+            throw new GitletException("File does not exist.");
+        }
+        try (BufferedReader in = Files.newBufferedReader(script.toPath())) {
+            new Batch(repository).run(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Ensures number of arguments equals expected number of args and Gitlet repository is initialized */
+    private static void validate(Repository repository, String[] args, int n) {
+        if (args.length != n) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (!repository.isInitialized()) {
+            throw new GitletException("Not in an initialized Gitlet directory.");
+        }
+    }
+
+    /** Returns PATH, taken from the root of REPOSITORY if it is relative */
+    private static File resolve(Repository repository, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(repository.getRoot(), path);
+    }
+
+    /** Validates restore, based on its specific cases */
+    private static void validateRestore(Repository repository, String[] args) {
+        if (!repository.isInitialized()) {
+            throw new GitletException("Not in an initialized Gitlet directory.");
+        } else if (args.length == 3 && args[1].equals("--")) { // case 1
+            repository.restore(args[2]);
+        } else if (args.length == 4 && args[2].equals("--")) { // case 2
+            repository.restore(args[1], args[3]);
+        } else {
+            throw new GitletException("Incorrect operands.");
         }
     }
 }
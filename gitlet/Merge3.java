@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/** Line-based three-way merge (diff3). Both sides are diffed against the split point;
+ *  changes that touch different regions of the split version are taken as they are, and
+ *  conflict markers are written only around regions that both sides changed differently.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class Merge3 {
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    static final String SEPARATOR = "=======\n";
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    private final String[] base;
+    private final String[] ours;
+    private final String[] theirs;
+    private final Appendable out;
+    private final Resolver resolver;
+    private int conflicts;
+
+    /** Supplies a known resolution for a conflicting region */
+    public interface Resolver {
+        /** Returns the text to use in place of the conflict between OURS and THEIRS, or null if there is none */
+        String resolve(String ours, String theirs);
+    }
+
+    private Merge3(String[] base, String[] ours, String[] theirs, Appendable out, Resolver resolver) {
+        this.base = base;
+        this.ours = ours;
+        this.theirs = theirs;
+        this.out = out;
+        this.resolver = resolver;
+    }
+
+    /** Writes the merge of OURS and THEIRS, relative to BASE, to OUT a line at a time and
+     *  returns the number of conflicting regions */
+    public static int merge(String[] base, String[] ours, String[] theirs, Appendable out) {
+        return merge(base, ours, theirs, out, null);
+    }
+
+    /** Like merge, but conflicting regions that RESOLVER (if not null) knows how to resolve are
+     *  replaced by its resolution and not counted as conflicts */
+    public static int merge(String[] base, String[] ours, String[] theirs, Appendable out, Resolver resolver) {
+        Merge3 merge = new Merge3(base, ours, theirs, out, resolver);
+        merge.run(Diff.diff(base, ours), Diff.diff(base, theirs));
+        return merge.conflicts;
+    }
+
+    /** Merges the text of three versions of a file into OUT and returns the number of conflicts */
+    public static int merge(String base, String ours, String theirs, Appendable out, Resolver resolver) {
+        return merge(Diff.lines(base), Diff.lines(ours), Diff.lines(theirs), out, resolver);
+    }
+
+    /** Writes the whole-file conflict used when one side deleted the file and the other changed it */
+    public static void wholeFileConflict(String ours, String theirs, Appendable out) {
+        try {
+            out.append(OURS_MARKER);
+            appendText(ours, out);
+            out.append(SEPARATOR);
+            appendText(theirs, out);
+            out.append(THEIRS_MARKER);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void appendText(String text, Appendable out) throws IOException {
+        if (text != null && !text.isEmpty()) {
+            out.append(text);
+            if (!text.endsWith("\n")) {
+                out.append('\n');
+            }
+        }
+    }
+
+    /** Walks both hunk lists in split-point order, grouping hunks whose split-point ranges
+     *  overlap or touch, and copying unchanged split-point lines between groups */
+    private void run(List<Diff.Hunk> oursHunks, List<Diff.Hunk> theirsHunks) {
+        try {
+            int basePos = 0;
+            int i = 0;
+            int j = 0;
+            while (i < oursHunks.size() || j < theirsHunks.size()) {
+                int groupStart = Math.min(start(oursHunks, i), start(theirsHunks, j));
+                int groupEnd = groupStart;
+                int firstOurs = i;
+                int firstTheirs = j;
+                boolean grew = true;
+                while (grew) {
+                    grew = false;
+                    if (i < oursHunks.size() && oursHunks.get(i).aStart <= groupEnd) {
+                        groupEnd = Math.max(groupEnd, oursHunks.get(i).aEnd);
+                        i += 1;
+                        grew = true;
+                    }
+                    if (j < theirsHunks.size() && theirsHunks.get(j).aStart <= groupEnd) {
+                        groupEnd = Math.max(groupEnd, theirsHunks.get(j).aEnd);
+                        j += 1;
+                        grew = true;
+                    }
+                }
+                copy(base, basePos, groupStart);
+                basePos = groupEnd;
+                mergeGroup(groupStart, groupEnd, oursHunks.subList(firstOurs, i), ours,
+                        theirsHunks.subList(firstTheirs, j), theirs);
+            }
+            copy(base, basePos, base.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int start(List<Diff.Hunk> hunks, int index) {
+        return index < hunks.size() ? hunks.get(index).aStart : Integer.MAX_VALUE;
+    }
+
+    /** Writes the result for split-point lines [groupStart, groupEnd), given the hunks of each side inside it */
+    private void mergeGroup(int groupStart, int groupEnd, List<Diff.Hunk> oursGroup, String[] oursLines,
+                            List<Diff.Hunk> theirsGroup, String[] theirsLines) throws IOException {
+        if (theirsGroup.isEmpty()) {
+            copySide(groupStart, groupEnd, oursGroup, oursLines);
+        } else if (oursGroup.isEmpty()) {
+            copySide(groupStart, groupEnd, theirsGroup, theirsLines);
+        } else {
+            int[] oursRange = sideRange(groupStart, groupEnd, oursGroup);
+            int[] theirsRange = sideRange(groupStart, groupEnd, theirsGroup);
+            if (sameLines(oursLines, oursRange, theirsLines, theirsRange)) { // both sides made the same change
+                copy(oursLines, oursRange[0], oursRange[1]);
+                return;
+            }
+            String resolution = resolver == null ? null
+                    : resolver.resolve(join(oursLines, oursRange), join(theirsLines, theirsRange));
+            if (resolution != null) {
+                out.append(resolution);
+            } else {
+                conflicts += 1;
+                out.append(OURS_MARKER);
+                copyEndingLine(oursLines, oursRange[0], oursRange[1]);
+                out.append(SEPARATOR);
+                copyEndingLine(theirsLines, theirsRange[0], theirsRange[1]);
+                out.append(THEIRS_MARKER);
+            }
+        }
+    }
+
+    /** Writes one side's version of split-point lines [groupStart, groupEnd) */
+    private void copySide(int groupStart, int groupEnd, List<Diff.Hunk> group, String[] lines) throws IOException {
+        int[] range = sideRange(groupStart, groupEnd, group);
+        copy(lines, range[0], range[1]);
+    }
+
+    /** Returns the range of lines on one side that corresponds to split-point lines
+     *  [groupStart, groupEnd), given that side's hunks inside the group */
+    private static int[] sideRange(int groupStart, int groupEnd, List<Diff.Hunk> group) {
+        Diff.Hunk first = group.get(0);
+        Diff.Hunk last = group.get(group.size() - 1);
+        return new int[]{first.bStart - (first.aStart - groupStart), last.bEnd + (groupEnd - last.aEnd)};
+    }
+
+    private static boolean sameLines(String[] a, int[] aRange, String[] b, int[] bRange) {
+        if (aRange[1] - aRange[0] != bRange[1] - bRange[0]) {
+            return false;
+        }
+        for (int k = 0; k < aRange[1] - aRange[0]; k += 1) {
+            if (!a[aRange[0] + k].equals(b[bRange[0] + k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String join(String[] lines, int[] range) {
+        StringBuilder joined = new StringBuilder();
+        for (int k = range[0]; k < range[1]; k += 1) {
+            joined.append(lines[k]);
+        }
+        return joined.toString();
+    }
+
+    private void copy(String[] lines, int from, int to) throws IOException {
+        for (int k = from; k < to; k += 1) {
+            out.append(lines[k]);
+        }
+    }
+
+    /** Copies lines, adding a newline if the last one has none so the next marker starts its own line */
+    private void copyEndingLine(String[] lines, int from, int to) throws IOException {
+        copy(lines, from, to);
+        if (to > from && !lines[to - 1].endsWith("\n")) {
+            out.append('\n');
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The outcome of merging a branch into the head, computed entirely in memory from the
+ *  blob maps of the split point, the head and the branch: the files whose contents change,
+ *  the files removed, and the files left with conflict markers. Nothing is written until
+ *  the caller applies the plan, so the working directory and staging area are updated once.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class MergePlan {
+    /** Files whose merged contents differ from the head, mapped to those contents */
+    private final Map<String, String> writes = new TreeMap<>();
+    /** Files tracked by the head that the merge removes */
+    private final Set<String> removals = new TreeSet<>();
+    /** Files written with conflict markers */
+    private final List<String> conflicts = new ArrayList<>();
+
+    private final Map<String, String> splitBlobs;
+    private final Map<String, String> headBlobs;
+    private final Map<String, String> branchBlobs;
+    /** Recorded resolutions for conflicting regions, or null */
+    private final Merge3.Resolver resolver;
+
+    private MergePlan(Map<String, String> splitBlobs, Map<String, String> headBlobs,
+                      Map<String, String> branchBlobs, Merge3.Resolver resolver) {
+        this.splitBlobs = splitBlobs;
+        this.headBlobs = headBlobs;
+        this.branchBlobs = branchBlobs;
+        this.resolver = resolver;
+    }
+
+    /** Plans the merge of BRANCHBLOBS into HEADBLOBS, given their split point SPLITBLOBS;
+     *  RESOLVER, if not null, supplies resolutions for conflicting regions */
+    public static MergePlan plan(Map<String, String> splitBlobs, Map<String, String> headBlobs,
+                                 Map<String, String> branchBlobs, Merge3.Resolver resolver) {
+        MergePlan plan = new MergePlan(splitBlobs, headBlobs, branchBlobs, resolver);
+        Set<String> allFiles = new TreeSet<>(splitBlobs.keySet());
+        allFiles.addAll(headBlobs.keySet());
+        allFiles.addAll(branchBlobs.keySet());
+        plan.planRenames(allFiles);
+        for (String file : allFiles) {
+            plan.planFile(file, splitBlobs.get(file), headBlobs.get(file), branchBlobs.get(file));
+        }
+        return plan;
+    }
+
+    public Map<String, String> getWrites() {
+        return writes;
+    }
+
+    public Set<String> getRemovals() {
+        return removals;
+    }
+
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    public boolean hasConflicts() {
+        return !conflicts.isEmpty();
+    }
+
+    /** Plans files renamed on exactly one side since the split point, and takes them out of ALLFILES */
+    private void planRenames(Set<String> allFiles) {
+        Set<String> handled = new HashSet<>();
+        for (Map.Entry<String, String> rename : RenameDetector.detect(splitBlobs, headBlobs).entrySet()) {
+            String source = rename.getKey();
+            String target = rename.getValue();
+            if (branchBlobs.containsKey(source) && !branchBlobs.containsKey(target)) { // renamed in head only
+                handled.add(source);
+                handled.add(target);
+                String merged = mergeVersions(target, splitBlobs.get(source), headBlobs.get(target),
+                        branchBlobs.get(source));
+                change(target, merged);
+            }
+        }
+        for (Map.Entry<String, String> rename : RenameDetector.detect(splitBlobs, branchBlobs).entrySet()) {
+            String source = rename.getKey();
+            String target = rename.getValue();
+            if (headBlobs.containsKey(source) && !headBlobs.containsKey(target) && !handled.contains(source)) {
+                handled.add(source); // renamed in branch only
+                handled.add(target);
+                removals.add(source);
+                String merged = mergeVersions(target, splitBlobs.get(source), headBlobs.get(source),
+                        branchBlobs.get(target));
+                change(target, merged);
+            }
+        }
+        allFiles.removeAll(handled);
+    }
+
+    /** Plans one file from its split, head and branch versions, any of which may be null */
+    private void planFile(String file, String splitVersion, String headVersion, String branchVersion) {
+        if (splitVersion == null) { // case 4 & 5
+            if (headVersion == null) {
+                change(file, branchVersion);
+            } else if (branchVersion != null && !branchVersion.equals(headVersion)) { // added differently on both
+                change(file, mergeVersions(file, "", headVersion, branchVersion));
+            }
+        } else if (headVersion == null || branchVersion == null) { // case 6 & 7
+            if (headVersion == null && branchVersion == null) {
+                return; // deleted on both sides
+            } else if (splitVersion.equals(headVersion)) {
+                removals.add(file);
+            } else if (!splitVersion.equals(branchVersion)) { // deleted on one side, modified on the other
+                StringBuilder conflict = new StringBuilder();
+                Merge3.wholeFileConflict(headVersion, branchVersion, conflict);
+                conflicts.add(file);
+                change(file, conflict.toString());
+            } // if split = branch: do nothing
+        } else {
+            change(file, mergeVersions(file, splitVersion, headVersion, branchVersion)); // cases 1, 2 & 3
+        }
+    }
+
+    /** Returns the merged contents of FILE, recording a conflict if the line merge finds one */
+    private String mergeVersions(String file, String splitVersion, String headVersion, String branchVersion) {
+        if (splitVersion.equals(branchVersion) || headVersion.equals(branchVersion)) {
+            return headVersion;
+        } else if (splitVersion.equals(headVersion)) {
+            return branchVersion;
+        }
+        StringBuilder merged = new StringBuilder(Math.max(headVersion.length(), branchVersion.length()));
+        if (Merge3.merge(splitVersion, headVersion, branchVersion, merged, resolver) > 0) {
+            conflicts.add(file);
+        }
+        return merged.toString();
+    }
+
+    /** Records that FILE ends up with CONTENTS, unless the head already has exactly that */
+    private void change(String file, String contents) {
+        if (contents != null && !contents.equals(headBlobs.get(file))) {
+            writes.put(file, contents);
+        }
+    }
+}
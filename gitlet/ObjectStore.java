@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import jdk.jfr.Event;
+
+/** One kind of immutable object in a repository, commits or blobs, each stored in a file named by
+ *  its ID. Objects this repository writes always go in its own directory, but it may also borrow
+ *  objects from other repositories on the same machine: the alternates file in the .gitlet
+ *  directory lists, one per line, the .gitlet directories of repositories whose objects are looked
+ *  at when one is not found here, so that many checkouts of one project can share a single copy
+ *  of its history. Relative paths are taken from the .gitlet directory, and the alternates of an
+ *  alternate are followed too, up to MAX_ALTERNATE_DEPTH repositories deep.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class ObjectStore {
+    /** Name of the file, in the .gitlet directory, that lists the repositories objects are borrowed from */
+    static final String ALTERNATES_NAME = "alternates";
+    private static final int MAX_ALTERNATE_DEPTH = 5;
+
+    private final File gitletDir;
+    /** Name of the subdirectory that holds this kind of object */
+    private final String kind;
+    private final File dir;
+    private final Trace trace;
+    private final Events events;
+    /** The directories objects are borrowed from, in the order they are searched, once read */
+    private List<File> borrowedDirs;
+
+    ObjectStore(File gitletDir, String kind, Trace trace, Events events) {
+        this.gitletDir = gitletDir;
+        this.kind = kind;
+        this.dir = new File(gitletDir, kind);
+        this.trace = trace;
+        this.events = events;
+    }
+
+    /** Returns the directory this repository's own objects are written to */
+    File getDir() {
+        return dir;
+    }
+
+    /** Returns where the object ID is, or would be, stored in this repository itself */
+    File localFile(String id) {
+        return new File(dir, id);
+    }
+
+    /** Returns the file holding the object ID, here or in a repository it is borrowed from, or null */
+    File find(String id) {
+        File local = localFile(id);
+        if (local.exists()) {
+            return local;
+        }
+        for (File borrowed : borrowedDirs()) {
+            File file = new File(borrowed, id);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    boolean contains(String id) {
+        return find(id) != null;
+    }
+
+    /** Returns the IDs of every object here or borrowed, in order */
+    List<String> ids() {
+        long start = trace.start();
+        Event event = events.begin(Events.DIRECTORY_SCAN);
+        TreeSet<String> ids = new TreeSet<>();
+        addIds(ids, Objects.requireNonNull(Utils.plainFilenamesIn(dir)));
+        for (File borrowed : borrowedDirs()) {
+            List<String> names = Utils.plainFilenamesIn(borrowed);
+            if (names != null) {
+                addIds(ids, names);
+            }
+        }
+        trace.end("plainFilenamesIn " + kind, start, 0);
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, dir.getPath(), ids.size());
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Adds to IDS the object files among NAMES, leaving out the temporary files of objects being written */
+    private static void addIds(TreeSet<String> ids, List<String> names) {
+        for (String name : names) {
+            if (!name.endsWith(DurableWriter.LOCK_SUFFIX)) {
+                ids.add(name);
+            }
+        }
+    }
+
+    /** Returns whether any objects are borrowed from other repositories */
+    boolean hasAlternates() {
+        return !borrowedDirs().isEmpty();
+    }
+
+    /** Returns the .gitlet directories listed in this repository's own alternates file */
+    List<File> alternates() {
+        return readAlternates(gitletDir);
+    }
+
+    /** Forgets the alternates read so far, after the alternates file has changed */
+    synchronized void reload() {
+        borrowedDirs = null;
+    }
+
+    private synchronized List<File> borrowedDirs() {
+        if (borrowedDirs == null) {
+            List<File> dirs = new ArrayList<>();
+            List<File> visited = new ArrayList<>();
+            visited.add(gitletDir.toPath().toAbsolutePath().normalize().toFile());
+            addBorrowedDirs(gitletDir, 1, visited, dirs);
+            borrowedDirs = dirs;
+        }
+        return borrowedDirs;
+    }
+
+    /** Adds the object directories of the alternates of the repository in FROMGITLETDIR, and of
+     *  theirs, to DIRS, skipping repositories already VISITED */
+    private void addBorrowedDirs(File fromGitletDir, int depth, List<File> visited, List<File> dirs) {
+        if (depth > MAX_ALTERNATE_DEPTH) {
+            return;
+        }
+        for (File alternate : readAlternates(fromGitletDir)) {
+            if (!visited.contains(alternate)) {
+                visited.add(alternate);
+                File borrowed = new File(alternate, kind);
+                if (borrowed.isDirectory()) {
+                    dirs.add(borrowed);
+                }
+                addBorrowedDirs(alternate, depth + 1, visited, dirs);
+            }
+        }
+    }
+
+    private static List<File> readAlternates(File gitletDir) {
+        List<File> alternates = new ArrayList<>();
+        File alternatesFile = new File(gitletDir, ALTERNATES_NAME);
+        if (!alternatesFile.isFile()) {
+            return alternates;
+        }
+        for (String line : Utils.readContentsAsString(alternatesFile).split("\n")) {
+            String path = line.strip();
+            if (path.isEmpty() || path.startsWith("#")) {
+                continue;
+            }
+            File alternate = new File(path);
+            if (!alternate.isAbsolute()) {
+                alternate = new File(gitletDir, path);
+            }
+            alternates.add(alternate.toPath().toAbsolutePath().normalize().toFile());
+        }
+        return alternates;
+    }
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A stream of objects sent from one repository to another. A pack starts with MAGIC and the
+ *  number of objects, followed by each object as its type (BLOB or COMMIT), its ID, its length and
+ *  its bytes. Blobs come first, so that every commit arrives after the contents it tracks.
+ *  Objects are written and read one at a time, so neither side holds the whole pack in memory,
+ *  and each is checked against its ID as it arrives.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class Pack {
+    static final String MAGIC = "GITLET-PACK 2";
+    static final byte BLOB = 'b';
+    static final byte COMMIT = 'c';
+
+    /** Writes the blobs BLOBIDS and commits COMMITIDS of SOURCE to OUT as a pack; parents should
+     *  come before children */
+    static void write(OutputStream out, Repository source, List<String> commitIds, List<String> blobIds)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF(MAGIC);
+        data.writeInt(blobIds.size() + commitIds.size());
+        for (String id : blobIds) {
+            writeObject(data, BLOB, id, Utils.readContents(source.blobFile(id)));
+        }
+        for (String id : commitIds) {
+            writeObject(data, COMMIT, id, Utils.readContents(source.commitFile(id)));
+        }
+        data.flush();
+    }
+
+    private static void writeObject(DataOutputStream data, byte type, String id, byte[] bytes) throws IOException {
+        data.writeByte(type);
+        data.write(id.getBytes(StandardCharsets.US_ASCII));
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /** Reads a pack from IN into TARGET, skipping objects it already has, and returns the IDs of
+     *  the commits the pack held */
+    static List<String> read(InputStream in, Repository target) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (!data.readUTF().equals(MAGIC)) {
+                throw new GitletException("Not a Gitlet pack.");
+            }
+            int count = data.readInt();
+            List<String> ids = new ArrayList<>(Math.max(0, Math.min(count, 1 << 16)));
+            byte[] idBytes = new byte[Utils.UID_LENGTH];
+            for (int i = 0; i < count; i += 1) {
+                byte type = data.readByte();
+                data.readFully(idBytes);
+                String id = new String(idBytes, StandardCharsets.US_ASCII);
+                int length = data.readInt();
+                if (length < 0) {
+                    throw new GitletException("Pack is corrupt.");
+                }
+                // read as the bytes arrive, so a garbled length cannot allocate more than the pack holds
+                byte[] bytes = data.readNBytes(length);
+                if (bytes.length != length || !Utils.sha1(bytes).equals(id)) {
+                    throw new GitletException("Pack is corrupt.");
+                }
+                if (type == BLOB) {
+                    if (!target.hasBlob(id)) {
+                        target.storeBlob(id, bytes);
+                    }
+                } else if (type == COMMIT) {
+                    if (!target.hasCommit(id)) {
+                        target.storeCommit(id, bytes);
+                    }
+                    ids.add(id);
+                } else {
+                    throw new GitletException("Pack is corrupt.");
+                }
+            }
+            return ids;
+        } catch (EOFException e) {
+            throw new GitletException("Pack is truncated.");
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The branches of a repository and which one is current. A branch is either loose, a file in
+ *  the branch directory holding its tip's ID, or packed, a line "ID NAME" in the packed-refs file,
+ *  which is sorted by name so one branch can be found by binary search without reading the rest.
+ *  A loose branch overrides a packed one of the same name. pack() moves every loose branch into
+ *  packed-refs, so a repository with thousands of branches keeps them in one file.
+ *  The head is a symbolic ref: the head file holds "ref: NAME" of the current branch, and the
+ *  head commit is that branch's tip, so the two can never disagree. Repositories made before
+ *  this kept the branch name in a currBranch file; it is read if the head file is not symbolic
+ *  and removed the next time the current branch changes.
+ *  Every change to a branch or to the head is recorded in its Reflog.
+ *  Every file is replaced atomically, and pack() and delete() write packed-refs before removing
+ *  loose files, so readers need no lock. Branch names become paths under the branch and logs
+ *  directories, so only names that isValidName accepts are written; others are never found.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class RefStore {
+    static final String SYMBOLIC_PREFIX = "ref: ";
+
+    private final File branchDir;
+    private final File packedFile;
+    private final File headFile;
+    /** Where the current branch was recorded before the head became a symbolic ref */
+    private final File legacyCurrBranchFile;
+    private final DurableWriter writer;
+    private final Reflog reflog;
+    /** Contents of packed-refs as last read, and the modification time and length they were read at */
+    private byte[] packed;
+    private long packedModified = -1;
+    private long packedLength = -1;
+
+    RefStore(File gitletDir, DurableWriter writer) {
+        this.branchDir = new File(gitletDir, "branch");
+        this.packedFile = new File(gitletDir, "packed-refs");
+        this.headFile = new File(gitletDir, "head");
+        this.legacyCurrBranchFile = new File(gitletDir, "currBranch");
+        this.writer = writer;
+        this.reflog = new Reflog(new File(gitletDir, "logs"), writer);
+    }
+
+    Reflog getReflog() {
+        return reflog;
+    }
+
+    File getBranchDir() {
+        return branchDir;
+    }
+
+    /** Returns whether NAME can name a branch: one or more segments separated by '/', none of them
+     *  empty, "." or "..", with no backslash or control character, so that its files stay inside
+     *  the .gitlet directory */
+    static boolean isValidName(String name) {
+        for (String segment : name.split("/", -1)) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                return false;
+            }
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            char c = name.charAt(i);
+            if (c == '\\' || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Throws a GitletException unless NAME is a valid branch name */
+    static void checkName(String name) {
+        if (!isValidName(name)) {
+            throw new GitletException("Invalid branch name.");
+        }
+    }
+
+    /** Returns the name of the current branch, or null while a repository is still being created */
+    String currentBranch() {
+        String head = headFile.exists() ? Utils.readContentsAsString(headFile) : "";
+        if (head.startsWith(SYMBOLIC_PREFIX)) {
+            return head.substring(SYMBOLIC_PREFIX.length()).strip();
+        }
+        return legacyCurrBranchFile.exists() ? Utils.readContentsAsString(legacyCurrBranchFile) : null;
+    }
+
+    /** Makes BRANCH the current branch, because of OPERATION */
+    void setCurrentBranch(String branch, String operation) {
+        String oldId = headId();
+        writer.writeRef(headFile, SYMBOLIC_PREFIX + branch + "\n");
+        legacyCurrBranchFile.delete();
+        String newId = read(branch);
+        if (newId != null) {
+            reflog.append(Reflog.HEAD, oldId, newId, operation);
+        }
+    }
+
+    /** Returns the ID of the head commit, or null before the first commit */
+    String headId() {
+        if (!headFile.exists()) {
+            return null;
+        }
+        return read(currentBranch());
+    }
+
+    /** Returns the ID at the tip of BRANCH, or null if there is no such branch */
+    String read(String branch) {
+        if (!isValidName(branch)) {
+            return null;
+        }
+        File loose = new File(branchDir, branch);
+        if (loose.isFile()) {
+            return Utils.readContentsAsString(loose);
+        }
+        return lookupPacked(branch);
+    }
+
+    boolean exists(String branch) {
+        return read(branch) != null;
+    }
+
+    /** Points BRANCH, which need not exist yet, at COMMITID, because of OPERATION */
+    void write(String branch, String commitId, String operation) {
+        checkName(branch);
+        String oldId = read(branch);
+        File loose = new File(branchDir, branch);
+        loose.getParentFile().mkdirs(); // remote-tracking branches, such as origin/main, live in a directory per remote
+        writer.writeRef(loose, commitId);
+        reflog.append(branch, oldId, commitId, operation);
+        if (branch.equals(currentBranch())) {
+            reflog.append(Reflog.HEAD, oldId, commitId, operation);
+        }
+    }
+
+    /** Removes BRANCH, loose and packed. Its log is kept, so its commits can still be found. */
+    void delete(String branch, String operation) {
+        checkName(branch);
+        String oldId = read(branch);
+        Map<String, String> packedRefs = readPacked();
+        if (packedRefs.remove(branch) != null) {
+            writePacked(packedRefs);
+        }
+        new File(branchDir, branch).delete();
+        reflog.append(branch, oldId, null, operation);
+    }
+
+    /** Returns the names of all branches, in order */
+    List<String> branches() {
+        TreeSet<String> names = new TreeSet<>(readPacked().keySet());
+        names.addAll(looseBranches());
+        return new ArrayList<>(names);
+    }
+
+    /** Moves every loose branch into packed-refs and returns how many were moved */
+    int pack() {
+        List<String> loose = looseBranches();
+        if (loose.isEmpty()) {
+            return 0;
+        }
+        Map<String, String> packedRefs = readPacked();
+        for (String branch : loose) {
+            packedRefs.put(branch, Utils.readContentsAsString(new File(branchDir, branch)));
+        }
+        writePacked(packedRefs);
+        for (String branch : loose) {
+            new File(branchDir, branch).delete();
+        }
+        return loose.size();
+    }
+
+    /** Returns the names of the loose branches, skipping any half-written .lock files */
+    private List<String> looseBranches() {
+        List<String> names = new ArrayList<>();
+        addLooseBranches(branchDir, "", names);
+        return names;
+    }
+
+    /** Adds the branches in DIR, whose names start with PREFIX, to NAMES */
+    private static void addLooseBranches(File dir, String prefix, List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                addLooseBranches(file, prefix + file.getName() + "/", names);
+            } else if (!file.getName().endsWith(DurableWriter.LOCK_SUFFIX)) {
+                names.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /** Finds BRANCH in packed-refs by binary search over its lines, or returns null */
+    private String lookupPacked(String branch) {
+        byte[] data = packedBytes();
+        int lo = 0; // always the start of a line
+        int hi = data.length; // always the start of a line, or the end
+        while (lo < hi) {
+            int start = (lo + hi) >>> 1;
+            while (start > lo && data[start - 1] != '\n') {
+                start -= 1;
+            }
+            int end = lineEnd(data, start);
+            int cmp = branch.compareTo(nameOf(data, start, end));
+            if (cmp == 0) {
+                return new String(data, start, Utils.UID_LENGTH, StandardCharsets.UTF_8);
+            } else if (cmp < 0) {
+                hi = start;
+            } else {
+                lo = end + 1;
+            }
+        }
+        return null;
+    }
+
+    /** Returns packed-refs as a sorted map from branch name to ID */
+    private Map<String, String> readPacked() {
+        byte[] data = packedBytes();
+        Map<String, String> refs = new TreeMap<>();
+        int start = 0;
+        while (start < data.length) {
+            int end = lineEnd(data, start);
+            refs.put(nameOf(data, start, end), new String(data, start, Utils.UID_LENGTH, StandardCharsets.UTF_8));
+            start = end + 1;
+        }
+        return refs;
+    }
+
+    private void writePacked(Map<String, String> refs) {
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<String, String> ref : new TreeMap<>(refs).entrySet()) {
+            contents.append(ref.getValue()).append(' ').append(ref.getKey()).append('\n');
+        }
+        writer.writeRef(packedFile, contents.toString());
+    }
+
+    /** Returns the contents of packed-refs, rereading them only if the file has changed */
+    private synchronized byte[] packedBytes() {
+        long modified = packedFile.lastModified();
+        long length = packedFile.length();
+        if (packed == null || modified != packedModified || length != packedLength) {
+            packed = packedFile.isFile() ? Utils.readContents(packedFile) : new byte[0];
+            packedModified = modified;
+            packedLength = length;
+        }
+        return packed;
+    }
+
+    private static int lineEnd(byte[] data, int start) {
+        int end = start;
+        while (end < data.length && data[end] != '\n') {
+            end += 1;
+        }
+        return end;
+    }
+
+    private static String nameOf(byte[] data, int start, int end) {
+        int nameStart = start + Utils.UID_LENGTH + 1;
+        return new String(data, nameStart, end - nameStart, StandardCharsets.UTF_8);
+    }
+}
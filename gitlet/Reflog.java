@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The history of where each ref has pointed. Every change to a branch, and to the head, appends
+ *  a record to that ref's log in the logs directory; records are never rewritten, so commits left
+ *  behind by reset or rm-branch can still be found. Records have a fixed layout of RECORD_BYTES
+ *  bytes, "OLDID NEWID MILLIS OPERATION\n" with the time zero-padded and the operation padded or
+ *  cut to fit, so the nth most recent record is read with one seek, and, since records are
+ *  appended in time order, the one in effect at a given time is found by binary search.
+ *  A branch that did not exist before or after a change is logged with NULL_ID.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class Reflog {
+    /** Name of the head's log; every other log is named after its branch */
+    static final String HEAD = "HEAD";
+    static final String NULL_ID = "0".repeat(Utils.UID_LENGTH);
+    static final int RECORD_BYTES = 256;
+    private static final int TIME_DIGITS = 13;
+    private static final int TIME_OFFSET = 2 * (Utils.UID_LENGTH + 1);
+    private static final int OPERATION_OFFSET = TIME_OFFSET + TIME_DIGITS + 1;
+    private static final int OPERATION_BYTES = RECORD_BYTES - OPERATION_OFFSET - 1;
+
+    private final File headLog;
+    private final File branchLogDir;
+    private final DurableWriter writer;
+
+    Reflog(File logsDir, DurableWriter writer) {
+        this.headLog = new File(logsDir, HEAD);
+        this.branchLogDir = new File(logsDir, "branch");
+        this.writer = writer;
+    }
+
+    /** Records that REF moved from OLDID to NEWID, either of which may be null, because of OPERATION */
+    void append(String ref, String oldId, String newId, String operation) {
+        File log = logFile(ref);
+        log.getParentFile().mkdirs();
+        trimTornRecord(log);
+        writer.append(log, encode(oldId, newId, System.currentTimeMillis(), operation));
+    }
+
+    /** Returns the number of records in the log of REF */
+    int size(String ref) {
+        return (int) (logFile(ref).length() / RECORD_BYTES);
+    }
+
+    /** Returns the Nth most recent record of REF, counting from 0 */
+    Entry read(String ref, int n) {
+        try (RandomAccessFile log = new RandomAccessFile(logFile(ref), "r")) {
+            return readRecord(log, size(ref) - 1 - n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Returns every record of REF, most recent first */
+    List<Entry> readAll(String ref) {
+        File log = logFile(ref);
+        List<Entry> entries = new ArrayList<>();
+        if (!log.isFile()) {
+            return entries;
+        }
+        byte[] data = Utils.readContents(log);
+        for (int start = (data.length / RECORD_BYTES - 1) * RECORD_BYTES; start >= 0; start -= RECORD_BYTES) {
+            entries.add(decode(new String(data, start, RECORD_BYTES, StandardCharsets.UTF_8)));
+        }
+        return entries;
+    }
+
+    /** Returns how many records back from the most recent the record of REF in effect at TIME is,
+     *  that is the last one made at or before TIME, or -1 if the log starts after TIME */
+    int findAt(String ref, long time) {
+        int size = size(ref);
+        if (size == 0) {
+            return -1;
+        }
+        try (RandomAccessFile log = new RandomAccessFile(logFile(ref), "r")) {
+            int lo = 0; // records before lo were made at or before TIME
+            int hi = size; // records from hi on were made after it
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (readRecord(log, mid).time <= time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo == 0 ? -1 : size - lo;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Returns the time that DATE, as yyyy-MM-dd with an optional HH:mm or HH:mm:ss, names in milliseconds */
+    static long parseTime(String date) {
+        for (String pattern : new String[]{"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm", "yyyy-MM-dd"}) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            try {
+                if (format.toPattern().length() == date.length()) {
+                    return format.parse(date).getTime();
+                }
+            } catch (ParseException e) {
+                continue;
+            }
+        }
+        throw new GitletException("Invalid date " + date + ".");
+    }
+
+    private File logFile(String ref) {
+        if (ref.equals(HEAD)) {
+            return headLog;
+        }
+        RefStore.checkName(ref);
+        return new File(branchLogDir, ref);
+    }
+
+    /** Cuts off a partial record left at the end of LOG by a crash, so the next one lines up */
+    private static void trimTornRecord(File log) {
+        long length = log.length();
+        if (length % RECORD_BYTES != 0) {
+            try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+                file.setLength(length - length % RECORD_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static Entry readRecord(RandomAccessFile log, int index) throws IOException {
+        byte[] record = new byte[RECORD_BYTES];
+        log.seek((long) index * RECORD_BYTES);
+        log.readFully(record);
+        return decode(new String(record, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] encode(String oldId, String newId, long time, String operation) {
+        StringBuilder record = new StringBuilder(RECORD_BYTES);
+        record.append(oldId == null ? NULL_ID : oldId).append(' ');
+        record.append(newId == null ? NULL_ID : newId).append(' ');
+        String millis = Long.toString(time);
+        record.append("0".repeat(TIME_DIGITS - millis.length())).append(millis).append(' ');
+        for (int i = 0; i < OPERATION_BYTES; i += 1) {
+            char c = i < operation.length() ? operation.charAt(i) : ' ';
+            record.append(c < ' ' || c > '~' ? '?' : c); // one byte per character keeps the layout fixed
+        }
+        return record.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Entry decode(String record) {
+        return new Entry(record.substring(0, Utils.UID_LENGTH),
+                record.substring(Utils.UID_LENGTH + 1, TIME_OFFSET - 1),
+                Long.parseLong(record.substring(TIME_OFFSET, TIME_OFFSET + TIME_DIGITS)),
+                record.substring(OPERATION_OFFSET, RECORD_BYTES - 1).stripTrailing());
+    }
+
+    /** One change to a ref */
+    static class Entry {
+        final String oldId;
+        final String newId;
+        final long time;
+        final String operation;
+
+        Entry(String oldId, String newId, long time, String operation) {
+            this.oldId = oldId;
+            this.newId = newId;
+            this.time = time;
+            this.operation = operation;
+        }
+    }
+}
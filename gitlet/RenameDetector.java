@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Finds files that were renamed between two snapshots. Files with identical contents are
+ *  paired first; the rest are paired by similarity, estimated from MinHash sketches of each
+ *  file's set of lines. Sketches are bucketed by bands (locality-sensitive hashing), so only
+ *  files sharing a bucket are compared, rather than every deleted file against every added one.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class RenameDetector {
+    /** Number of hash functions in a sketch */
+    private static final int SKETCH_SIZE = 64;
+    /** Sketch values per LSH band; SKETCH_SIZE / BAND_ROWS bands in all */
+    private static final int BAND_ROWS = 4;
+    /** Smallest estimated similarity at which two files count as a rename */
+    private static final double MIN_SIMILARITY = 0.5;
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Returns the renames from BEFORE to AFTER, as a map from old file name to new file name.
+     *  Only files missing from AFTER can be sources, and only files missing from BEFORE can be targets. */
+    public static Map<String, String> detect(Map<String, String> before, Map<String, String> after) {
+        List<String> deleted = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        for (String fileName : before.keySet()) {
+            if (!after.containsKey(fileName)) {
+                deleted.add(fileName);
+            }
+        }
+        for (String fileName : after.keySet()) {
+            if (!before.containsKey(fileName)) {
+                added.add(fileName);
+            }
+        }
+        Map<String, String> renames = new HashMap<>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+
+        Map<String, String> deletedByContents = new HashMap<>();
+        for (String fileName : deleted) {
+            deletedByContents.putIfAbsent(before.get(fileName), fileName);
+        }
+        Set<String> usedTargets = new HashSet<>();
+        for (String fileName : added) { // exact renames
+            String source = deletedByContents.remove(after.get(fileName));
+            if (source != null) {
+                renames.put(source, fileName);
+                usedTargets.add(fileName);
+            }
+        }
+
+        Map<String, long[]> sketches = new HashMap<>();
+        Map<Long, List<String>> buckets = new HashMap<>();
+        for (String fileName : deleted) {
+            if (!renames.containsKey(fileName)) {
+                long[] sketch = sketch(before.get(fileName));
+                if (sketch != null) {
+                    sketches.put(fileName, sketch);
+                    for (long key : bandKeys(sketch)) {
+                        buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(fileName);
+                    }
+                }
+            }
+        }
+        List<Candidate> candidates = new ArrayList<>();
+        for (String fileName : added) {
+            if (usedTargets.contains(fileName)) {
+                continue;
+            }
+            long[] sketch = sketch(after.get(fileName));
+            if (sketch == null) {
+                continue;
+            }
+            Set<String> sources = new HashSet<>();
+            for (long key : bandKeys(sketch)) {
+                sources.addAll(buckets.getOrDefault(key, List.of()));
+            }
+            for (String source : sources) {
+                double similarity = similarity(sketches.get(source), sketch);
+                if (similarity >= MIN_SIMILARITY) {
+                    candidates.add(new Candidate(source, fileName, similarity));
+                }
+            }
+        }
+        candidates.sort((a, b) -> Double.compare(b.similarity, a.similarity));
+        for (Candidate candidate : candidates) { // most similar pairs claim their files first
+            if (!renames.containsKey(candidate.source) && !usedTargets.contains(candidate.target)) {
+                renames.put(candidate.source, candidate.target);
+                usedTargets.add(candidate.target);
+            }
+        }
+        return renames;
+    }
+
+    /** Returns the MinHash sketch of the distinct lines of CONTENTS, or null if it has no lines */
+    static long[] sketch(String contents) {
+        if (contents.isEmpty()) {
+            return null;
+        }
+        long[] sketch = new long[SKETCH_SIZE];
+        Arrays.fill(sketch, Long.MAX_VALUE);
+        for (String line : Diff.lines(contents)) {
+            long shingle = line.strip().hashCode();
+            for (int i = 0; i < SKETCH_SIZE; i += 1) {
+                long value = mix(shingle + (i + 1) * GOLDEN_GAMMA);
+                if (value < sketch[i]) {
+                    sketch[i] = value;
+                }
+            }
+        }
+        return sketch;
+    }
+
+    /** Returns the fraction of positions at which two sketches agree, an estimate of the Jaccard similarity */
+    static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < SKETCH_SIZE; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return (double) same / SKETCH_SIZE;
+    }
+
+    /** Hashes each band of SKETCH, salted with the band's index */
+    private static long[] bandKeys(long[] sketch) {
+        long[] keys = new long[SKETCH_SIZE / BAND_ROWS];
+        for (int band = 0; band < keys.length; band += 1) {
+            long key = band;
+            for (int row = 0; row < BAND_ROWS; row += 1) {
+                key = mix(key * 31 + sketch[band * BAND_ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /** The SplitMix64 finalizer */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static class Candidate {
+        private final String source;
+        private final String target;
+        private final double similarity;
+
+        Candidate(String source, String target, double similarity) {
+            this.source = source;
+            this.target = target;
+            this.similarity = similarity;
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+import jdk.jfr.Event;
 
 import static gitlet.Utils.*;
 
@@ -12,43 +19,343 @@ import static gitlet.Utils.*;
  *  @author Liana Kong and Mischa Mikami
  *  */
 public class Repository implements Serializable {
-    /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    /** Name of the directory, in a repository's root, that holds all of its state */
+    public static final String GITLET_DIR_NAME = ".gitlet";
+    /** Name of the file in the .gitlet directory that writers lock */
+    static final String LOCK_NAME = "lock";
+    /** The working directory: the root of the repository */
+    private final File cwd;
     /** Stores all methods created */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
-    /** Stores all branches created */
-    public static final File BRANCH_DIR = join(GITLET_DIR, "branch");
-    /** Points at the current branch */
-    public static final File CURR_BRANCH = new File(GITLET_DIR, "currBranch");
-    /** Points at head commit */
-    public static final File HEAD = new File(GITLET_DIR, "head");
-    /** Stores all commits made */
-    public static final File COMMIT_DIR = join(GITLET_DIR, "commit");
-    /** Stores the file contents (blobs) that are tracked by commits */
-    public static final File BLOB_DIR = join(GITLET_DIR, "blob");
+    private final File gitletDir;
+    /** Stores all commits made, here or borrowed from alternates */
+    private final ObjectStore commits;
+    /** Stores the file contents (blobs) that are tracked by commits, by the SHA-1 of their bytes */
+    private final ObjectStore blobs;
     /** Stages all files for removal and addition in the next commit */
-    public static final File STAGING_DIR = join(GITLET_DIR, "stage");
+    private final File stagingDir;
+    /** Holds the saved staging area */
+    private final File stagingFile;
+    /** Lists the sparse-checkout patterns, if sparse checkout is enabled */
+    private final File sparseFile;
+    /** Holds recorded conflict resolutions, if reuse of them is enabled */
+    private final File rerereDir;
+    /** Holds the path of each remote repository, in a file named after the remote */
+    private final File remoteDir;
+    /** Names the remote blobs are fetched from on demand, if this is a partial clone */
+    private final File promisorFile;
+    /** Where commands print their output */
+    private final transient PrintStream out;
+    /** Pool for writing files during checkouts, shared with other repositories, or null for a pool per checkout */
+    private final transient ExecutorService workers;
+    /** Counts the work done by commands, when enabled with --trace */
+    private final transient Trace trace = new Trace();
+    /** Records the work done by commands for Flight Recorder, shared with the repositories they open */
+    private final transient Events events;
+    /** Writes objects, refs and the staging area according to the durability policy */
+    private final transient DurableWriter writer;
+    /** The branches, and which of them the head points at */
+    private final transient RefStore refs;
     private final StagingArea stagingArea = new StagingArea();
+    private final SparseCheckout sparse;
+    private final Rerere rerere;
+    /** The most recently read head commit, keyed by its ID; commits never change once written */
+    private volatile AbstractMap.SimpleImmutableEntry<String, Commit> cachedHead;
+    /** Whether saves of the staging area are being held back until flush */
+    private boolean deferSaves;
+    /** Whether the staging area has changes that were held back */
+    private boolean stageDirty;
+    /** Number of unreleased lock calls, and the lock they hold once the repository exists */
+    private int lockDepth;
+    private transient RepositoryLock writeLock;
 
-    public Repository() {
-        stagingArea.load();
+    /** Opens the repository whose working directory is ROOT, printing to standard output */
+    public Repository(File root) {
+        this(root, System.out, null);
     }
 
-    /** Initializes Gitlet */
-    public void init() {
+    /** Opens the repository whose working directory is ROOT. Commands print their output to OUT,
+     *  and checkouts write files on WORKERS, or on a pool of their own if it is null. */
+    public Repository(File root, PrintStream out, ExecutorService workers) {
+        this(root, out, workers, new Events());
+    }
+
+    /** Opens a repository like the constructor above, recording Flight Recorder events in EVENTS */
+    Repository(File root, PrintStream out, ExecutorService workers, Events events) {
+        this.cwd = root.getAbsoluteFile();
+        this.gitletDir = join(cwd, GITLET_DIR_NAME);
+        this.events = events;
+        this.writer = new DurableWriter(trace, events);
+        this.commits = new ObjectStore(gitletDir, "commit", trace, events);
+        this.blobs = new ObjectStore(gitletDir, "blob", trace, events);
+        this.stagingDir = join(gitletDir, "stage");
+        this.stagingFile = join(stagingDir, "stagingArea.txt");
+        this.sparseFile = join(gitletDir, "sparse");
+        this.rerereDir = join(gitletDir, "rr-cache");
+        this.remoteDir = join(gitletDir, "remotes");
+        this.promisorFile = join(gitletDir, "promisor");
+        this.out = out;
+        this.workers = workers;
+        this.sparse = new SparseCheckout(sparseFile);
+        this.rerere = new Rerere(rerereDir);
+        this.refs = new RefStore(gitletDir, writer);
+        stagingArea.load(stagingFile);
+    }
+
+    /** Returns the working directory this repository was opened on */
+    public File getRoot() {
+        return cwd;
+    }
+
+    /** Returns the .gitlet directory, which exists only once the repository is initialized */
+    public File getGitletDir() {
+        return gitletDir;
+    }
+
+    /** Returns the trace that counts the work done by commands on this repository */
+    Trace getTrace() {
+        return trace;
+    }
+
+    /** Returns the Flight Recorder events of commands on this repository */
+    Events getEvents() {
+        return events;
+    }
+
+    /** Returns whether the repository has been initialized */
+    public boolean isInitialized() {
+        return gitletDir.exists();
+    }
+
+    /** Returns the file holding the commit with the full ID ID, which may be borrowed from an alternate */
+    File commitFile(String id) {
+        File file = commits.find(id);
+        if (file == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        return file;
+    }
+
+    boolean hasCommit(String id) {
+        return commits.contains(id);
+    }
+
+    /** Reads the commit with the full ID ID */
+    Commit readCommit(String id) {
+        long start = trace.start();
+        Event event = events.begin(Events.OBJECT_READ);
+        File file = commitFile(id);
+        Commit commit = Utils.readObject(file, Commit.class);
+        trace.end("readObject commit", start, trace.isEnabled() ? file.length() : 0);
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, id, "commit", file.length());
+        }
+        return commit;
+    }
+
+    /** Stores BYTES, received from another repository, as the commit with ID ID */
+    void storeCommit(String id, byte[] bytes) {
+        writer.writeObject(commits.localFile(id), bytes);
+    }
+
+    /** Returns the file holding the blob with ID ID, fetching it from the promisor remote if this is
+     *  a partial clone that has not needed it before */
+    File blobFile(String id) {
+        File file = blobs.find(id);
+        if (file == null) {
+            prefetchBlobs(List.of(id));
+            file = blobs.find(id);
+        }
+        if (file == null) {
+            throw new GitletException("No blob with that id exists.");
+        }
+        return file;
+    }
+
+    /** Returns whether the blob with ID ID is here or borrowed; a partial clone may lack blobs it could fetch */
+    boolean hasBlob(String id) {
+        return blobs.contains(id);
+    }
+
+    /** Stores BYTES, received from another repository, as the blob with ID ID */
+    void storeBlob(String id, byte[] bytes) {
+        writer.writeObject(blobs.localFile(id), bytes);
+    }
+
+    /** Stores CONTENTS as a blob, unless it is already stored, and returns its ID */
+    private String writeBlob(String contents) {
+        byte[] bytes = contents.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        String id = sha1(bytes);
+        if (!blobs.contains(id)) {
+            writer.writeObject(blobs.localFile(id), bytes);
+        }
+        return id;
+    }
+
+    /** Stores CONTENTS, whose blob ID the caller has already computed as ID, unless it is already stored */
+    private void writeBlob(String id, String contents) {
+        if (!blobs.contains(id)) {
+            writer.writeObject(blobs.localFile(id), contents.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        }
+    }
+
+    private String readBlob(String id) {
+        return new String(readBlobBytes(id), java.nio.charset.StandardCharsets.UTF_8);
+    }
+
+    /** Returns the bytes of the blob with ID ID, counted by the trace */
+    private byte[] readBlobBytes(String id) {
+        File file = blobFile(id);
+        long start = trace.start();
+        Event event = events.begin(Events.OBJECT_READ);
+        byte[] bytes = Utils.readContents(file);
+        trace.end("readContents blob", start, bytes.length);
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, id, "blob", (long) bytes.length);
+        }
+        return bytes;
+    }
+
+    /** Returns the SHA-1 of BYTES, counted by the trace */
+    private String sha1(byte[] bytes) {
+        long start = trace.start();
+        Event event = events.begin(Events.HASH);
+        String id = Utils.sha1(bytes);
+        trace.end("sha1", start, bytes.length);
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, (long) bytes.length);
+        }
+        return id;
+    }
+
+    /** Returns the SHA-1 of CONTENTS, the ID of a blob holding them, counted by the trace */
+    private String sha1(String contents) {
+        long start = trace.start();
+        Event event = events.begin(Events.HASH);
+        String id = Utils.sha1(contents);
+        trace.end("sha1", start, contents.length());
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, (long) contents.length());
+        }
+        return id;
+    }
+
+    /** Reads FILE in the working directory, counted by the trace */
+    private String readWorkingFile(File file) {
+        long start = trace.start();
+        String contents = Utils.readContentsAsString(file);
+        trace.end("readContents working file", start, contents.length());
+        return contents;
+    }
+
+    /** Writes FILES (file name -> contents) to the working directory, counted by the trace */
+    private void checkout(Map<String, String> files) {
+        long start = trace.start();
+        CheckoutWriter checkoutWriter = new CheckoutWriter(cwd, workers, events);
+        checkoutWriter.write(files);
+        trace.add("writeContents checkout", checkoutWriter.getFilesWritten(), checkoutWriter.getBytesWritten(),
+                trace.isEnabled() ? System.nanoTime() - start : 0);
+    }
+
+    /** Writes the blob each file in FILES (file name -> blob ID) maps to into the working directory,
+     *  fetching missing blobs in one batch first. Each blob is read by the thread that writes it, so
+     *  the checkout's byte budget also bounds how much of the commit is held in memory. */
+    private void checkoutBlobs(Map<String, String> files) {
+        prefetchBlobs(files.values());
+        long start = trace.start();
+        CheckoutWriter checkoutWriter = new CheckoutWriter(cwd, workers, events);
+        checkoutWriter.write(files, new CheckoutWriter.Source() {
+            @Override
+            public long size(String id) {
+                return blobFile(id).length();
+            }
+
+            @Override
+            public byte[] read(String id) {
+                return readBlobBytes(id);
+            }
+        });
+        trace.add("writeContents checkout", checkoutWriter.getFilesWritten(), checkoutWriter.getBytesWritten(),
+                trace.isEnabled() ? System.nanoTime() - start : 0);
+    }
+
+    /** Returns the contents of the files in NAMES that BLOBIDS maps to a blob ID, taking those of
+     *  blobs not yet stored from UNSTORED, by ID, and fetching missing blobs in one batch */
+    private Map<String, String> readBlobs(Map<String, String> blobIds, Collection<String> names,
+                                          Map<String, String> unstored) {
+        List<String> wanted = new ArrayList<>();
+        for (String name : names) {
+            String id = blobIds.get(name);
+            if (id != null && !unstored.containsKey(id)) {
+                wanted.add(id);
+            }
+        }
+        prefetchBlobs(wanted);
+        Map<String, String> contents = new HashMap<>();
+        for (String name : names) {
+            String id = blobIds.get(name);
+            if (id != null) {
+                contents.put(name, unstored.containsKey(id) ? unstored.get(id) : readBlob(id));
+            }
+        }
+        return contents;
+    }
+
+    /** Fetches those of the blobs IDS that are missing from the promisor remote in one pack, if
+     *  this is a partial clone; otherwise a missing blob is left for the reader to report. Readers
+     *  such as diff run without the write lock, so it is taken for the fetch, as for any other
+     *  write: two processes fetching the same blob would otherwise write the same lock file. */
+    private void prefetchBlobs(Collection<String> ids) {
+        if (!promisorFile.isFile() || missingBlobs(ids).isEmpty()) {
+            return;
+        }
+        lock();
         try {
-            if (GITLET_DIR.exists()) {
-                throw new GitletException("A Gitlet version-control system already exists in the current directory.");
+            Set<String> missing = missingBlobs(ids); // another process may have fetched them while we waited
+            if (missing.isEmpty()) {
+                return;
+            }
+            long start = trace.start();
+            Repository promisor = openRemote(readContentsAsString(promisorFile).strip());
+            Transfer.send(promisor, List.of(), new ArrayList<>(missing), this);
+            trace.end("fetch missing blobs", start, 0);
+        } finally {
+            unlock();
+        }
+    }
+
+    /** Returns those of the blobs IDS that are neither here nor borrowed */
+    private Set<String> missingBlobs(Collection<String> ids) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            if (!blobs.contains(id)) {
+                missing.add(id);
             }
-            GITLET_DIR.mkdir();
-            COMMIT_DIR.mkdir();
-            STAGING_DIR.mkdir();
-            BLOB_DIR.mkdir();
-            BRANCH_DIR.mkdir();
-            commit("initial commit");
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
         }
+        return missing;
+    }
+
+    /** Returns whether this is a partial clone, which fetches blobs from its promisor remote only when needed */
+    boolean isPartial() {
+        return promisorFile.isFile();
+    }
+
+    /** Returns the stream commands print to */
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /** Initializes Gitlet */
+    public void init() {
+        if (gitletDir.exists()) {
+            throw new GitletException("A Gitlet version-control system already exists in the current directory.");
+        }
+        gitletDir.mkdir();
+        commits.getDir().mkdir();
+        stagingDir.mkdir();
+        blobs.getDir().mkdir();
+        refs.getBranchDir().mkdir();
+        refs.setCurrentBranch("main", "init");
+        commit("initial commit");
     }
 
     /** Adds any changed file contents to the staging directory so that they can be committed */
@@ -56,24 +363,22 @@ public class Repository implements Serializable {
         Map<String, String> stagedForAddition = stagingArea.getStagedForAddition();
         Map<String, String> stagedForRemoval = stagingArea.getStagedForRemoval();
         Map<String, String> currCommitBlobs = Objects.requireNonNull(getCurrCommit()).getBlobMap();
-        try {
-            File file = new File(CWD, fileName);
-            if (file.exists()) {
-                String fileContents = Utils.readContentsAsString(file); // gets contents of file as string
-                String prevCommitBlobID = currCommitBlobs.get(fileName); // check if file changed from curr commit
-                if (!fileContents.equals(prevCommitBlobID)) { // if file is new or modified
-                    stagedForAddition.put(fileName, fileContents); // stage it for addition
-                    stagedForRemoval.remove(fileName);
-                } else { // if file is unchanged and currently staged
-                    stagedForAddition.remove(fileName);
-                    stagedForRemoval.remove(fileName);
-                }
-                stagingArea.save();
-            } else {
-                throw new GitletException("File does not exist.");
+        File file = new File(cwd, fileName);
+        if (file.exists()) {
+            String fileContents = readWorkingFile(file); // gets contents of file as string
+            String blobId = sha1(fileContents);
+            String prevCommitBlobID = currCommitBlobs.get(fileName); // check if file changed from curr commit
+            if (!blobId.equals(prevCommitBlobID)) { // if file is new or modified
+                writeBlob(blobId, fileContents);
+                stagedForAddition.put(fileName, blobId); // stage it for addition
+                stagedForRemoval.remove(fileName);
+            } else { // if file is unchanged and currently staged
+                stagedForAddition.remove(fileName);
+                stagedForRemoval.remove(fileName);
             }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+            saveStage();
+        } else {
+            throw new GitletException("File does not exist.");
         }
     }
 
@@ -82,23 +387,19 @@ public class Repository implements Serializable {
         Map<String, String> stagedForAddition = stagingArea.getStagedForAddition();
         Map<String, String> stagedForRemoval = stagingArea.getStagedForRemoval();
         Map<String, String> currCommitBlobs = Objects.requireNonNull(getCurrCommit()).getBlobMap();
-        try {
-            if (stagedForAddition.containsKey(fileName)) { // unstage file if it is currently staged for addition
-                stagedForAddition.remove(fileName);
-            } else if (currCommitBlobs.containsKey(fileName)) {
-                File file = new File(CWD, fileName);
-                if (file.exists()) {
-                    file.delete();
-                }
-                String blobId = currCommitBlobs.get(fileName);
-                stagedForRemoval.put(fileName, blobId);
-            } else {
-                throw new GitletException("No reason to remove the file.");
+        if (stagedForAddition.containsKey(fileName)) { // unstage file if it is currently staged for addition
+            stagedForAddition.remove(fileName);
+        } else if (currCommitBlobs.containsKey(fileName)) {
+            File file = new File(cwd, fileName);
+            if (file.exists()) {
+                file.delete();
             }
-            stagingArea.save();
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+            String blobId = currCommitBlobs.get(fileName);
+            stagedForRemoval.put(fileName, blobId);
+        } else {
+            throw new GitletException("No reason to remove the file.");
         }
+        saveStage();
     }
 
     /** Updates the saved file contents (blobs) that have been removed or added & returns tracked files */
@@ -115,57 +416,132 @@ public class Repository implements Serializable {
     }
 
     private Commit getCurrCommit() {
-        if (getHead() != null) {
-            File currCommit = new File(COMMIT_DIR, getHead());
-            return Utils.readObject(currCommit, Commit.class);
+        String headId = getHead();
+        if (headId == null) {
+            return null;
+        }
+        AbstractMap.SimpleImmutableEntry<String, Commit> cached = cachedHead;
+        if (cached == null || !cached.getKey().equals(headId)) {
+            cached = new AbstractMap.SimpleImmutableEntry<>(headId,
+                    readCommit(headId));
+            cachedHead = cached;
         }
-        return null;
+        return cached.getValue();
     }
 
-    private String getHead() {
-        if (HEAD.exists()) {
-            return Utils.readContentsAsString(HEAD);
+    /** Saves the staging area, or only notes that it changed while saves are deferred */
+    private void saveStage() {
+        if (deferSaves) {
+            stageDirty = true;
+        } else {
+            stagingArea.save(writer, stagingFile);
         }
-        return null;
     }
 
-    /** Commit any changes made to the file contents and save it to the commit directory
-     * for merge, add what happens if parent2 isn't null */
-    public void commit(String message) {
-        try {
-            if (message.isEmpty()) {
-                throw new GitletException("Please enter a commit message.");
-            } else if (message.equals("initial commit")) {
-                String timestamps = "Thu Jan 1 00:00:00 1970 -0800";
-                Commit committing = new Commit(message, timestamps, updatedBlobs(), null, null);
-                committing.updateCommits(committing);
-                updateBranch(committing);
-            } else if (stagingArea.getStagedForAddition().isEmpty() && stagingArea.getStagedForRemoval().isEmpty()) {
-                throw new GitletException("No changes added to the commit.");
-            } else if (!message.contains("merge")) {
-                Commit committing = new Commit(message, realDate(), updatedBlobs(), getHead(), null);
-                committing.updateCommits(committing);
-                updateBranch(committing);
-            } else {
-                int endLength = message.length() - (" into ").length() - Math.toIntExact(CURR_BRANCH.length());
-                String otherBranchName = message.substring(("Merged ").length(), endLength);
-                Commit committing = new Commit(message, realDate(), updatedBlobs(), getHead(), otherBranchName);
-                committing.updateCommits(committing);
-                updateBranch(committing);
+    /** Starts or stops holding back saves of the staging area, for runs of many commands
+     *  in one process; stopping writes out anything held back and syncs everything written */
+    public void deferSaves(boolean defer) {
+        deferSaves = defer;
+        if (!defer) {
+            flush();
+            sync();
+        }
+    }
+
+    /** Takes the repository's write lock, waiting for any other process changing it to finish.
+     *  Calls nest; the lock is released by the matching outermost unlock, which first syncs
+     *  everything written under it, so a batch of commands pays for one sync rather than one
+     *  per command. Before init there is nothing to lock, so the lock is taken by the first
+     *  nested call made afterwards. */
+    public synchronized void lock() {
+        lockDepth += 1;
+        if (writeLock == null && isInitialized()) {
+            writeLock = RepositoryLock.acquire(join(gitletDir, LOCK_NAME));
+            if (!stageDirty) {
+                stagingArea.load(stagingFile); // another writer may have changed it while we waited
             }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
         }
     }
 
-    /** Updates the branch to point at the most recent commit */
-    public void updateBranch(Commit committing) {
-        if (committing.getMessage().equals("initial commit")) {
-            branch("main");
-            Utils.writeContents(CURR_BRANCH, "main");
+    public synchronized void unlock() {
+        lockDepth -= 1;
+        if (lockDepth == 0) {
+            try {
+                sync();
+            } finally {
+                if (writeLock != null) {
+                    writeLock.release();
+                    writeLock = null;
+                }
+            }
         }
-        File newBranchFile = new File(BRANCH_DIR, Utils.readContentsAsString(CURR_BRANCH));
-        Utils.writeContents(newBranchFile, committing.getId(committing));
+    }
+
+    /** Writes out the staging area if saves of it were held back */
+    public void flush() {
+        if (stageDirty) {
+            stagingArea.save(writer, stagingFile);
+            stageDirty = false;
+        }
+    }
+
+    /** Makes everything written so far durable, as far as the durability policy asks */
+    public void sync() {
+        writer.sync();
+    }
+
+    /** Reads the current branch and its tip together, without locking. The head names the branch
+     *  rather than holding a copy of its tip, and each ref file is replaced atomically, so the pair
+     *  is always one that a writer left behind, even if a switch is under way. */
+    private RefSnapshot readRefs() {
+        String currentBranch = refs.currentBranch();
+        return new RefSnapshot(currentBranch, refs.read(currentBranch));
+    }
+
+    /** Returns the ID of the head commit */
+    String getHead() {
+        return refs.headId();
+    }
+
+    /** Commit any changes made to the file contents and save it to the commit directory */
+    public void commit(String message) {
+        commit(message, List.of());
+    }
+
+    /** Commits the staged changes; MERGEDPARENTS are the IDs of the branch commits merged into the head */
+    private void commit(String message, List<String> mergedParents) {
+        if (message.isEmpty()) {
+            throw new GitletException("Please enter a commit message.");
+        } else if (message.equals("initial commit")) {
+            String timestamps = "Thu Jan 1 00:00:00 1970 -0800";
+            Commit committing = new Commit(message, timestamps, updatedBlobs(), List.of());
+            saveCommit(committing, "commit (initial): " + message);
+        } else if (stagingArea.getStagedForAddition().isEmpty() && stagingArea.getStagedForRemoval().isEmpty()) {
+            throw new GitletException("No changes added to the commit.");
+        } else {
+            List<String> parents = new ArrayList<>();
+            parents.add(getHead());
+            parents.addAll(mergedParents);
+            Commit committing = new Commit(message, realDate(), updatedBlobs(), parents);
+            saveCommit(committing, (mergedParents.isEmpty() ? "commit: " : "commit (merge): ") + message);
+            Set<String> pending = rerere.pendingFiles();
+            if (!pending.isEmpty()) {
+                rerere.recordResolutions(readBlobs(committing.getBlobMap(), pending, Map.of()));
+            }
+        }
+        stagingArea.clearStage();
+        saveStage();
+    }
+
+    /** Writes COMMITTING to the commit directory and moves the current branch, and so the head, to it;
+     *  OPERATION describes the commit in the reflog */
+    private void saveCommit(Commit committing, String operation) {
+        long start = trace.start();
+        byte[] bytes = Utils.serialize(committing);
+        trace.end("serialize commit", start, bytes.length);
+        String id = sha1(bytes);
+        writer.writeObject(commits.localFile(id), bytes);
+        refs.write(refs.currentBranch(), id, operation);
     }
 
     /** Displays the current timestamp of a commit, with a newly formatted date */
@@ -178,18 +554,10 @@ public class Repository implements Serializable {
 
     /** Logs all the commits made: starts at current commit and moves backward through all parent commits */
     public void log() {
-        String headCommitId = getHead();
-        Commit currCommit = getCurrCommit();
+        String headCommitId = readRefs().headId;
+        Commit currCommit = accessCommit(headCommitId);
         while (currCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + headCommitId);
-            if (currCommit.getParent2() != null) {
-                String first = currCommit.getParent1().substring(0, 7);
-                String second = currCommit.getParent2().substring(0, 7);
-                System.out.print("Merge: " + first + " " + second);
-            }
-            System.out.println("Date: " + currCommit.getTimestamp());
-            System.out.println(currCommit.getMessage() + "\n");
+            printCommit(headCommitId, currCommit);
             String parentCommit = currCommit.getParent1();
             if (parentCommit == null) {
                 break;
@@ -204,143 +572,208 @@ public class Repository implements Serializable {
         if (commitId == null || commitId.isEmpty()) {
             return null;
         }
+        return readCommit(resolveCommitId(commitId));
+    }
+
+    /** Returns the full ID of the commit that COMMITID names. It may be abbreviated, or be
+     *  REF@{N}, where REF last pointed N changes ago, or REF@{DATE}, where REF pointed at DATE.
+     *  REF is a branch or HEAD, or the current branch if it is left out. */
+    private String resolveCommitId(String commitId) {
+        int at = commitId.indexOf("@{");
+        if (at >= 0 && commitId.endsWith("}")) {
+            commitId = resolveReflogEntry(commitId.substring(0, at), commitId.substring(at + 2, commitId.length() - 1));
+        }
         int idLength = commitId.length();
         if (idLength < UID_LENGTH) {
-            for (String id : Objects.requireNonNull(plainFilenamesIn(COMMIT_DIR))) {
+            for (String id : commits.ids()) {
                 if (id.startsWith(commitId)) { // checks each commitID to find correct full one
                     commitId = id; // once found, reassigns shortened commitID to its full ID
                     break;
                 }
             }
         }
-        File thisFile = new File(COMMIT_DIR, commitId);
-        if (!thisFile.exists()) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
+        if (!commits.contains(commitId)) {
+            throw new GitletException("No commit with that id exists.");
         }
-        return Utils.readObject(thisFile, Commit.class);
+        return commitId;
     }
 
+    /** Returns the ID that REF pointed to at SELECTOR, a number of changes ago or a date */
+    private String resolveReflogEntry(String ref, String selector) {
+        if (ref.isEmpty()) {
+            ref = refs.currentBranch();
+        }
+        Reflog reflog = refs.getReflog();
+        int size = reflog.size(ref);
+        if (size == 0) {
+            throw new GitletException("Log for " + ref + " is empty.");
+        }
+        int n;
+        if (!selector.isEmpty() && selector.chars().allMatch(Character::isDigit)) {
+            n = Integer.parseInt(selector);
+            if (n >= size) {
+                throw new GitletException("Log for " + ref + " only has " + size + " entries.");
+            }
+        } else {
+            n = reflog.findAt(ref, Reflog.parseTime(selector));
+            if (n < 0) {
+                throw new GitletException("Log for " + ref + " does not go back to " + selector + ".");
+            }
+        }
+        return reflog.read(ref, n).newId;
+    }
 
-    /** Displays information about every commit made, in no particular order
-     * for merge, in the nested if statement, only the first 7 shaIDs are printed */
+    /** Lists the changes made to REF, a branch or HEAD, most recent first */
+    public void reflog(String ref) {
+        if (!ref.equals(Reflog.HEAD) && !refs.exists(ref) && refs.getReflog().size(ref) == 0) {
+            throw new GitletException("A branch with that name does not exist.");
+        }
+        List<Reflog.Entry> entries = refs.getReflog().readAll(ref);
+        for (int i = 0; i < entries.size(); i += 1) {
+            Reflog.Entry entry = entries.get(i);
+            out.println(entry.newId.substring(0, 7) + " " + ref + "@{" + i + "}: " + entry.operation);
+        }
+    }
+
+    /** Displays information about every commit made, in no particular order */
     public void globalLog() {
-        for (String fileId : Objects.requireNonNull(Utils.plainFilenamesIn(COMMIT_DIR))) {
-            Commit currCommit = accessCommit(fileId);
-            System.out.println("===");
-            System.out.println("commit " + fileId);
-            if (Objects.requireNonNull(currCommit).getParent2() != null) {
-                String first = currCommit.getParent1().substring(0, 7);
-                String second = currCommit.getParent2().substring(0, 7);
-                System.out.print("Merge: " + first + " " + second);
+        for (String fileId : commits.ids()) {
+            printCommit(fileId, Objects.requireNonNull(accessCommit(fileId)));
+        }
+    }
+
+    /** Prints one commit as log and global-log show it; merge commits list the first 7 digits of each parent */
+    private void printCommit(String commitId, Commit commit) {
+        out.println("===");
+        out.println("commit " + commitId);
+        if (commit.getParents().size() > 1) {
+            StringBuilder merge = new StringBuilder("Merge:");
+            for (String parent : commit.getParents()) {
+                merge.append(' ').append(parent, 0, 7);
             }
-            System.out.println("Date: " + currCommit.getTimestamp());
-            System.out.println(currCommit.getMessage() + "\n");
+            out.println(merge);
         }
+        out.println("Date: " + commit.getTimestamp());
+        out.println(commit.getMessage() + "\n");
     }
 
     /** Finds all commit IDs that match a given commit message */
     public void find(String message) {
         List<String> anyMatches = new ArrayList<>();
-        try {
-            for (String fileId : Objects.requireNonNull(Utils.plainFilenamesIn(COMMIT_DIR))) {
-                if (message.equals(Objects.requireNonNull(accessCommit(fileId)).getMessage())) {
-                    System.out.println(fileId);
-                    anyMatches.add(fileId);
-                }
-            }
-            if (anyMatches.isEmpty()) {
-                throw new GitletException("Found no commit with that message.");
+        for (String fileId : commits.ids()) {
+            if (message.equals(Objects.requireNonNull(accessCommit(fileId)).getMessage())) {
+                out.println(fileId);
+                anyMatches.add(fileId);
             }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+        }
+        if (anyMatches.isEmpty()) {
+            throw new GitletException("Found no commit with that message.");
         }
     }
 
     public void status() {
-        System.out.println("=== Branches ===");
-        Set<String> sortedBranches = new TreeSet<>(Objects.requireNonNull(plainFilenamesIn(BRANCH_DIR)));
-        for (String branch : sortedBranches) {
-            if (branch.equals(Utils.readContentsAsString(CURR_BRANCH))) {
-                System.out.println("*" + branch);
+        out.println("=== Branches ===");
+        String currBranch = readRefs().currentBranch;
+        for (String branch : refs.branches()) {
+            if (branch.equals(currBranch)) {
+                out.println("*" + branch);
             } else {
-                System.out.println(branch);
+                out.println(branch);
             }
         }
-        System.out.println("\n" + "=== Staged Files ===");
+        out.println("\n" + "=== Staged Files ===");
         Map<String, String> stagedForAddition = stagingArea.getStagedForAddition();
         Set<String> sortedAddition = new TreeSet<>(stagedForAddition.keySet());
         for (String file : sortedAddition) {
-            System.out.println(file);
+            out.println(file);
         }
-        System.out.println("\n" + "=== Removed Files ===");
+        out.println("\n" + "=== Removed Files ===");
         Map<String, String> stagedForRemoval = stagingArea.getStagedForRemoval();
         Set<String> sortedRemoval = new TreeSet<>(stagedForRemoval.keySet());
         for (String file : sortedRemoval) {
-            System.out.println(file);
+            out.println(file);
         }
-        System.out.println("\n" + "=== Modifications Not Staged For Commit ===");
-        System.out.println("\n" + "=== Untracked Files ===");
+        out.println("\n" + "=== Modifications Not Staged For Commit ===");
+        out.println("\n" + "=== Untracked Files ===");
     }
 
     /** Case 1: Restore the head commit */
     public void restore(String fileName) {
-        try {
-            Commit headCommit = getCurrCommit();
-            Map<String, String> headBlobMap = Objects.requireNonNull(headCommit).getBlobMap();
-            if (!headBlobMap.containsKey(fileName)) {
-                throw new GitletException("File does not exist in that commit.");
-            }
-            restoreFile(headCommit, fileName);
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+        Commit headCommit = getCurrCommit();
+        Map<String, String> headBlobMap = Objects.requireNonNull(headCommit).getBlobMap();
+        if (!headBlobMap.containsKey(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
         }
+        checkSparse(fileName);
+        restoreFile(headCommit, fileName);
     }
 
     /** Case 2: Restore a specified commit based on its Sha1-ID */
     public void restore(String commitID, String fileName) {
-        try {
-            Commit currCommit = Objects.requireNonNull(accessCommit(commitID));
-            if (!currCommit.getBlobMap().containsKey(fileName)) {
-                throw new GitletException("File does not exist in that commit.");
-            }
-            restoreFile(currCommit, fileName);
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+        Commit currCommit = Objects.requireNonNull(accessCommit(commitID));
+        if (!currCommit.getBlobMap().containsKey(fileName)) {
+            throw new GitletException("File does not exist in that commit.");
+        }
+        checkSparse(fileName);
+        restoreFile(currCommit, fileName);
+    }
+
+    /** Refuses to write a file that lies outside the sparse-checkout patterns */
+    private void checkSparse(String fileName) {
+        if (!sparse.matches(fileName)) {
+            throw new GitletException("File is outside the sparse-checkout patterns.");
         }
     }
 
     /** Restores a file from specified commit object */
     private void restoreFile(Commit commit, String fileName) {
         Map<String, String> commitBlobs = commit.getBlobMap(); // access files/blobIDs from this commit
-        String blobContents = commitBlobs.get(fileName); // retrieve correct blobID for specified file
-        File file = new File(CWD, fileName); // add file to CWD
+        String blobContents = readBlob(commitBlobs.get(fileName)); // retrieve contents for the file's blob ID
+        File file = new File(cwd, fileName); // add file to CWD
+        long start = trace.start();
         Utils.writeContents(file, blobContents); // write blobContents to this file in CWD
+        trace.end("writeContents restore", start, blobContents.length());
         stagingArea.getStagedForAddition().remove(fileName);
         stagingArea.getStagedForRemoval().remove(fileName);
-        stagingArea.save();
+        saveStage();
     }
 
     /** Creates a new branch and points it at the given head */
     public void branch(String branchName) {
-        File newBranch = new File(BRANCH_DIR, branchName);
-        try {
-            if (newBranch.exists()) {
-                throw new GitletException("A branch with that name already exists.");
+        if (refs.exists(branchName)) {
+            throw new GitletException("A branch with that name already exists.");
+        }
+        refs.write(branchName, getHead(), "branch: Created from HEAD");
+    }
+
+    /** Lists the files in the CWD that Gitlet manages: those inside the sparse-checkout
+     * patterns and not matched by .gitletignore */
+    private List<String> scanWorkingFiles() {
+        IgnoreMatcher ignored = new IgnoreMatcher(cwd);
+        List<String> workingFiles = new ArrayList<>();
+        long start = trace.start();
+        Event event = events.begin(Events.DIRECTORY_SCAN);
+        List<String> fileNames = Objects.requireNonNull(plainFilenamesIn(cwd));
+        trace.end("plainFilenamesIn working", start, 0);
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, cwd.getPath(), fileNames.size());
+        }
+        for (String fileName : fileNames) {
+            if (sparse.matches(fileName) && !ignored.isIgnored(fileName, false)) {
+                workingFiles.add(fileName);
             }
-            Utils.writeContents(newBranch, getHead());
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
         }
+        return workingFiles;
     }
 
     /** If the file is not in the staging directory or currently tracked, add it to an ArrayList of untracked files */
     private ArrayList<String> getUntrackedFiles() {
         ArrayList<String> untrackedFilesMap = new ArrayList<>();
-        for (String fileName : Objects.requireNonNull(plainFilenamesIn(CWD))) {
+        Map<String, String> trackedFiles = updatedBlobs();
+        for (String fileName : scanWorkingFiles()) {
             boolean stagedForAdd = stagingArea.getStagedForAddition().containsKey(fileName);
             boolean stagedForRemoval = stagingArea.getStagedForRemoval().containsKey(fileName);
-            boolean trackedFile = updatedBlobs().containsKey(fileName);
+            boolean trackedFile = trackedFiles.containsKey(fileName);
             if (!stagedForAdd && !stagedForRemoval && !trackedFile) {
                 untrackedFilesMap.add(fileName);
             }
@@ -350,210 +783,727 @@ public class Repository implements Serializable {
 
     /** Switches to another branch, overwrites CWD files as needed, updates head, and updates branch */
     public void switching(String branchName) {
-        try {
-            if (!getUntrackedFiles().isEmpty()) {
-                throw new GitletException("There is an untracked file in the way;"
-                        + " delete it, or add and commit it first.");
-            } else if (branchName.equals(Utils.readContentsAsString(CURR_BRANCH))) {
-                throw new GitletException("No need to switch to the current branch.");
+        if (!getUntrackedFiles().isEmpty()) {
+            throw new GitletException("There is an untracked file in the way;"
+                    + " delete it, or add and commit it first.");
+        } else if (branchName.equals(refs.currentBranch())) {
+            throw new GitletException("No need to switch to the current branch.");
+        } else {
+            String newBranchId = refs.read(branchName);
+            if (newBranchId == null) {
+                throw new GitletException("No such branch exists.");
             } else {
-                File newBranch = new File(BRANCH_DIR, branchName);
-                if (!newBranch.exists()) {
-                    throw new GitletException("No such branch exists.");
-                } else {
-                    Commit newBranchCommit = accessCommit(Utils.readContentsAsString(newBranch));
-                    updateCWD(Objects.requireNonNull(newBranchCommit));
-                    removeDifferentTrackedFiles(Objects.requireNonNull(getCurrCommit()), newBranchCommit);
-                    Utils.writeContents(CURR_BRANCH, branchName); // switch branch
-                    Utils.writeContents(Repository.HEAD, Utils.readContentsAsString(newBranch));
-                    accessCommit(Objects.requireNonNull(getHead()));
-                    stagingArea.clearStage();
-                    stagingArea.save();
-                }
+                Commit newBranchCommit = accessCommit(newBranchId);
+                updateCWD(Objects.requireNonNull(newBranchCommit));
+                removeDifferentTrackedFiles(Objects.requireNonNull(getCurrCommit()), newBranchCommit);
+                refs.setCurrentBranch(branchName, "switch: moving from " + refs.currentBranch() + " to " + branchName);
+                stagingArea.clearStage();
+                saveStage();
+                rerere.clearPending();
             }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
         }
     }
 
-    /** Updates the CWD based on the files from the most recent commit in the new branch */
+    /** Updates the CWD based on the files from the most recent commit in the new branch;
+     * the caller clears the staging area afterwards */
     private void updateCWD(Commit newBranchCommit) {
-        for (String fileName : newBranchCommit.getBlobMap().keySet()) {
-            restoreFile(newBranchCommit, fileName);
-        }
+        checkoutBlobs(sparse.filter(newBranchCommit.getBlobMap()));
     }
 
     /** Removes tracked files from the previous commit that are not in any commits from the new branch */
     private void removeDifferentTrackedFiles(Commit currBranch, Commit newBranchCommit) {
         for (String fileName : currBranch.getBlobMap().keySet()) {
-            if (!newBranchCommit.getBlobMap().containsKey(fileName)) {
-                Utils.restrictedDelete(fileName);
+            if (!newBranchCommit.getBlobMap().containsKey(fileName) && sparse.matches(fileName)) {
+                Utils.restrictedDelete(new File(cwd, fileName));
             }
         }
     }
 
-    /** Removes the branch without deleting any commits made in the branch */
-    public void rmBranch(String branchName) {
-        String currBranch = Utils.readContentsAsString(CURR_BRANCH);
-        File branchToDelete = new File(BRANCH_DIR, branchName);
-        try {
-            if (!branchToDelete.exists()) {
-                throw new GitletException("A branch with that name does not exist.");
-            } else if (branchName.equals(currBranch)) {
-                throw new GitletException("Cannot remove the current branch.");
-            } else {
-                branchToDelete.delete();
-            }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+    /** Moves every branch stored in a file of its own into the packed-refs file */
+    public void packRefs() {
+        int packed = refs.pack();
+        out.println("Packed " + packed + (packed == 1 ? " branch." : " branches."));
+    }
+
+    /** Saves REMOTEPATH, the .gitlet directory of another repository, under the name REMOTENAME */
+    public void addRemote(String remoteName, String remotePath) {
+        File remoteFile = remoteFile(remoteName);
+        if (remoteFile == null) {
+            throw new GitletException("Invalid remote name.");
+        } else if (remoteFile.exists()) {
+            throw new GitletException("A remote with that name already exists.");
         }
+        remoteDir.mkdir();
+        writer.writeRef(remoteFile, remotePath.replace("/", File.separator));
     }
 
+    public void rmRemote(String remoteName) {
+        File remoteFile = remoteFile(remoteName);
+        if (remoteFile == null || !remoteFile.exists()) {
+            throw new GitletException("A remote with that name does not exist.");
+        }
+        remoteFile.delete();
+    }
 
-    public void reset(String commitId) {
+    /** Returns the file holding the path of the remote REMOTENAME, or null if that cannot name a
+     *  remote: it must be a valid branch name without a '/', as it prefixes its remote-tracking branches */
+    private File remoteFile(String remoteName) {
+        if (!RefStore.isValidName(remoteName) || remoteName.contains("/")) {
+            return null;
+        }
+        return new File(remoteDir, remoteName);
+    }
+
+    /** Opens the repository saved as REMOTENAME; a relative path is taken from this repository's root */
+    private Repository openRemote(String remoteName) {
+        File remoteFile = remoteFile(remoteName);
+        if (remoteFile == null || !remoteFile.exists()) {
+            throw new GitletException("A remote with that name does not exist.");
+        }
+        File remoteGitletDir = new File(Utils.readContentsAsString(remoteFile));
+        if (!remoteGitletDir.isAbsolute()) {
+            remoteGitletDir = new File(cwd, remoteGitletDir.getPath());
+        }
+        if (!remoteGitletDir.isDirectory()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return new Repository(remoteGitletDir.getAbsoluteFile().getParentFile(), out, workers, events);
+    }
+
+    /** Copies the commits of REMOTEBRANCH in the remote REMOTENAME that this repository lacks, and
+     *  points the branch REMOTENAME/REMOTEBRANCH at its tip */
+    public void fetch(String remoteName, String remoteBranch) {
+        Repository remote = openRemote(remoteName);
+        String tip = remote.refs.read(remoteBranch);
+        if (tip == null) {
+            throw new GitletException("That remote does not have that branch.");
+        }
+        Transfer.send(remote, Transfer.missing(remote, tip, this), this);
+        refs.write(remoteName + "/" + remoteBranch, tip, "fetch: " + remoteName + " " + remoteBranch);
+    }
+
+    /** Copies the commits of the head that the remote REMOTENAME lacks, and moves its branch
+     *  REMOTEBRANCH to the head, as long as that only adds commits to it. Like git's default
+     *  receive.denyCurrentBranch, it refuses to move the branch checked out in the remote, whose
+     *  working directory would no longer match its head. */
+    public void push(String remoteName, String remoteBranch) {
+        Repository remote = openRemote(remoteName);
+        remote.lock();
         try {
-            if (!getUntrackedFiles().isEmpty()) {
-                throw new GitletException("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-            }
-            Commit resetCommit = accessCommit(commitId);
-            updateCWD(Objects.requireNonNull(resetCommit));
-            // removeDifferentTrackedFiles(Objects.requireNonNull(getCurrCommit()), resetCommit);
-            for (String fileName : Objects.requireNonNull(plainFilenamesIn(CWD))) {
-                if (!resetCommit.getBlobMap().containsKey(fileName)) {
-                    Utils.restrictedDelete(fileName);
-                }
+            if (remoteBranch.equals(remote.refs.currentBranch())) {
+                throw new GitletException("Cannot push to the branch checked out in the remote repository.");
             }
-            Utils.writeContents(HEAD, commitId);
-            Utils.writeContents(new File(BRANCH_DIR, Utils.readContentsAsString(CURR_BRANCH)), commitId);
-            stagingArea.clearStage();
-            stagingArea.save();
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+            String headId = getHead();
+            String remoteTip = remote.refs.read(remoteBranch);
+            if (remoteTip != null && !isAncestor(remoteTip, headId)) {
+                throw new GitletException("Please pull down remote changes before pushing.");
+            }
+            Transfer.send(this, Transfer.missing(this, headId, remote), remote);
+            remote.refs.write(remoteBranch, headId, "push: from " + cwd.getName());
+        } finally {
+            remote.unlock();
         }
     }
 
-    private Commit accessBranchCommitId(String branchName) {
-        File newBranch = new File(BRANCH_DIR, branchName);
-        return accessCommit(Utils.readContentsAsString(newBranch));
+    /** Fetches REMOTEBRANCH from the remote REMOTENAME and merges it into the current branch */
+    public void pull(String remoteName, String remoteBranch) {
+        fetch(remoteName, remoteBranch);
+        merge(List.of(remoteName + "/" + remoteBranch));
     }
 
-    public void merge(String branchName) {
-        try {
-            File otherBranch = new File(BRANCH_DIR, branchName);
-            if (!getUntrackedFiles().isEmpty()) {
+    /** Makes this repository, which must not exist yet, a clone of the repository at SOURCE, its
+     *  working directory or its .gitlet directory. Commit files never change once written, so they
+     *  are hard-linked rather than copied, or copied where links are not possible; if SHARED, they
+     *  are not copied at all but borrowed from the source through the alternates file. Every branch
+     *  of the source becomes a remote-tracking branch of the remote origin, and its current branch
+     *  is created and checked out here. If PARTIAL, only commits are copied: origin becomes the
+     *  promisor remote, from which blobs are fetched when a command first needs their contents,
+     *  starting with those of the files checked out. */
+    public void cloneFrom(File source, boolean shared, boolean partial) {
+        if (gitletDir.exists()) {
+            throw new GitletException("A Gitlet version-control system already exists in the current directory.");
+        }
+        source = source.toPath().toAbsolutePath().normalize().toFile();
+        File sourceGitletDir = source.getName().equals(GITLET_DIR_NAME) ? source : new File(source, GITLET_DIR_NAME);
+        if (!sourceGitletDir.isDirectory()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        Repository origin = new Repository(sourceGitletDir.getParentFile(), out, workers, events);
+        String defaultBranch = origin.refs.currentBranch();
+        Map<String, String> tips = new TreeMap<>(); // read before the objects, which are written before refs
+        for (String branch : origin.refs.branches()) {
+            if (branch.equals(defaultBranch) || !origin.isRemoteTracking(branch)) {
+                tips.put(branch, origin.refs.read(branch));
+            }
+        }
+        Map<String, String> files = origin.readCommit(tips.get(defaultBranch)).getBlobMap();
+        for (String fileName : files.keySet()) {
+            if (new File(cwd, fileName).exists()) {
                 throw new GitletException("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
-            } else if (!stagingArea.getStagedForAddition().isEmpty() || !stagingArea.getStagedForRemoval().isEmpty()) {
-                throw new GitletException("You have uncommitted changes.");
-            } else if (!otherBranch.exists()) {
+            }
+        }
+
+        cwd.mkdirs();
+        gitletDir.mkdir();
+        commits.getDir().mkdir();
+        stagingDir.mkdir();
+        blobs.getDir().mkdir();
+        refs.getBranchDir().mkdir();
+        List<File> alternates = new ArrayList<>();
+        if (shared) {
+            alternates.add(sourceGitletDir);
+        } else {
+            linkObjects(origin.commits.getDir(), commits.getDir());
+            if (!partial) {
+                linkObjects(origin.blobs.getDir(), blobs.getDir());
+            }
+            alternates.addAll(origin.commits.alternates()); // what the source borrows, the clone must too
+        }
+        if (!alternates.isEmpty()) {
+            StringBuilder alternatesList = new StringBuilder();
+            for (File alternate : alternates) {
+                alternatesList.append(alternate.getPath()).append('\n');
+            }
+            writer.writeRef(join(gitletDir, ObjectStore.ALTERNATES_NAME), alternatesList.toString());
+            commits.reload();
+            blobs.reload();
+        }
+        addRemote("origin", sourceGitletDir.getPath());
+        if (partial || origin.isPartial()) { // a clone of a partial clone can only be partial itself
+            writer.writeRef(promisorFile, "origin\n");
+        }
+        String operation = "clone: from " + sourceGitletDir.getParent();
+        for (Map.Entry<String, String> tip : tips.entrySet()) {
+            refs.write("origin/" + tip.getKey(), tip.getValue(), operation);
+        }
+        refs.setCurrentBranch(defaultBranch, operation);
+        refs.write(defaultBranch, tips.get(defaultBranch), operation);
+        checkoutBlobs(files);
+        stagingArea.clearStage();
+        saveStage();
+    }
+
+    /** Copies every object borrowed from alternates that this repository's branches need into the
+     *  repository itself, with the blobs they track, and stops borrowing */
+    public void dissociate() {
+        File alternatesFile = join(gitletDir, ObjectStore.ALTERNATES_NAME);
+        if (!alternatesFile.exists()) {
+            throw new GitletException("This repository does not borrow objects from another.");
+        }
+        Set<String> seen = new HashSet<>();
+        Set<String> seenBlobs = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        for (String branch : refs.branches()) {
+            stack.push(refs.read(branch));
+        }
+        int copied = 0;
+        while (!stack.isEmpty()) {
+            String id = stack.pop();
+            if (!seen.add(id)) {
+                continue;
+            }
+            File file = commitFile(id);
+            if (!file.equals(commits.localFile(id))) {
+                writer.writeObject(commits.localFile(id), Utils.readContents(file));
+                copied += 1;
+            }
+            Commit commit = readCommit(id);
+            for (String blobId : commit.getBlobMap().values()) {
+                File blobFile = blobs.find(blobId);
+                if (seenBlobs.add(blobId) && blobFile != null && !blobFile.equals(blobs.localFile(blobId))) {
+                    writer.writeObject(blobs.localFile(blobId), Utils.readContents(blobFile));
+                }
+            }
+            stack.addAll(commit.getParents());
+        }
+        writer.sync(); // every copy must be on disk before the borrowed ones stop being reachable
+        alternatesFile.delete();
+        commits.reload();
+        blobs.reload();
+        out.println("Copied " + copied + (copied == 1 ? " borrowed commit." : " borrowed commits."));
+    }
+
+    /** Returns whether BRANCH tracks a branch of one of this repository's remotes */
+    private boolean isRemoteTracking(String branch) {
+        int slash = branch.indexOf('/');
+        return slash > 0 && new File(remoteDir, branch.substring(0, slash)).isFile();
+    }
+
+    /** Hard-links every file in FROMDIR into TODIR, falling back to copies if the file system,
+     *  or the pair of directories, does not allow links */
+    private static void linkObjects(File fromDir, File toDir) {
+        List<String> names = plainFilenamesIn(fromDir);
+        if (names == null) {
+            return;
+        }
+        boolean canLink = true;
+        for (String name : names) {
+            if (name.endsWith(DurableWriter.LOCK_SUFFIX)) {
+                continue; // an object still being written
+            }
+            File from = new File(fromDir, name);
+            File to = new File(toDir, name);
+            try {
+                if (canLink) {
+                    try {
+                        Files.createLink(to.toPath(), from.toPath());
+                        continue;
+                    } catch (IOException | UnsupportedOperationException e) {
+                        canLink = false; // for example across devices; every other file would fail the same way
+                    }
+                }
+                Files.copy(from.toPath(), to.toPath());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /** Writes the commits of SPEC, and the blobs they track, to the bundle FILE. SPEC is a branch or commit, for its whole
+     *  history, or a range BASE..TIP, for the commits reachable from TIP but not from BASE, which
+     *  the receiving repository must then already have. */
+    public void bundleCreate(File file, String spec) {
+        int dots = spec.indexOf("..");
+        String tipSpec = dots < 0 ? spec : spec.substring(dots + 2);
+        String tip = resolveRevision(tipSpec);
+        Set<String> excluded = new HashSet<>();
+        if (dots >= 0) {
+            addAncestors(resolveRevision(spec.substring(0, dots)), excluded);
+        }
+        List<String> ids = Transfer.missing(this, tip, excluded::contains);
+        if (ids.isEmpty()) {
+            throw new GitletException("Refusing to create an empty bundle.");
+        }
+        Set<String> included = new HashSet<>(ids);
+        Set<String> prerequisites = new TreeSet<>();
+        for (String id : ids) {
+            for (String parent : readCommit(id).getParents()) {
+                if (!included.contains(parent)) {
+                    prerequisites.add(parent);
+                }
+            }
+        }
+        Set<String> prerequisiteBlobs = new HashSet<>(); // the receiver has these with the prerequisites
+        for (String prerequisite : prerequisites) {
+            prerequisiteBlobs.addAll(readCommit(prerequisite).getBlobMap().values());
+        }
+        List<String> blobIds = Transfer.missingBlobs(this, ids, prerequisiteBlobs::contains);
+        String refName = refs.exists(tipSpec) ? tipSpec : Reflog.HEAD;
+        Bundle.create(file, this, ids, blobIds, prerequisites, Map.of(refName, tip));
+    }
+
+    /** Imports the commits in the bundle FILE and points the branch bundle/NAME at the tip of each
+     *  ref NAME it carries, for merging like a fetched branch */
+    public void unbundle(File file) {
+        Bundle bundle = Bundle.unbundle(file, this);
+        for (Map.Entry<String, String> ref : bundle.getRefs().entrySet()) {
+            refs.write("bundle/" + ref.getKey(), ref.getValue(), "unbundle: " + file.getName());
+        }
+        int count = bundle.getCommitCount();
+        out.println("Unbundled " + count + (count == 1 ? " commit." : " commits."));
+    }
+
+    /** Returns the ID of the commit that REVISION, a branch or anything resolveCommitId accepts, names */
+    private String resolveRevision(String revision) {
+        String branchTip = refs.read(revision);
+        return branchTip != null ? branchTip : resolveCommitId(revision);
+    }
+
+    /** Returns whether ANCESTORID is DESCENDANTID or one of its ancestors, stopping as soon as it is found */
+    private boolean isAncestor(String ancestorId, String descendantId) {
+        if (!hasCommit(ancestorId)) {
+            return false;
+        }
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(descendantId);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (id.equals(ancestorId)) {
+                return true;
+            }
+            if (seen.add(id)) {
+                queue.addAll(readCommit(id).getParents());
+            }
+        }
+        return false;
+    }
+
+    /** Removes the branch without deleting any commits made in the branch */
+    public void rmBranch(String branchName) {
+        if (!refs.exists(branchName)) {
+            throw new GitletException("A branch with that name does not exist.");
+        } else if (branchName.equals(refs.currentBranch())) {
+            throw new GitletException("Cannot remove the current branch.");
+        } else {
+            refs.delete(branchName, "rm-branch: deleted");
+        }
+    }
+
+    public void reset(String commitId) {
+        if (!getUntrackedFiles().isEmpty()) {
+            throw new GitletException("There is an untracked file in the way; "
+                    + "delete it, or add and commit it first.");
+        }
+        commitId = resolveCommitId(commitId); // branches always hold full IDs
+        Commit resetCommit = accessCommit(commitId);
+        updateCWD(Objects.requireNonNull(resetCommit));
+        for (String fileName : scanWorkingFiles()) {
+            if (!resetCommit.getBlobMap().containsKey(fileName)) {
+                Utils.restrictedDelete(new File(cwd, fileName));
+            }
+        }
+        refs.write(refs.currentBranch(), commitId, "reset: moving to " + commitId.substring(0, 7));
+        stagingArea.clearStage();
+        saveStage();
+        rerere.clearPending();
+    }
+
+    /** Merges one branch into the current branch, or several at once (an octopus merge), which makes
+     * a single commit whose parents are the head and every merged branch */
+    public void merge(List<String> branchNames) {
+        rerere.resetResolvedCount();
+        if (!getUntrackedFiles().isEmpty()) {
+            throw new GitletException("There is an untracked file in the way;"
+                    + " delete it, or add and commit it first.");
+        } else if (!stagingArea.getStagedForAddition().isEmpty() || !stagingArea.getStagedForRemoval().isEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        String currBranch = refs.currentBranch();
+        List<String> branchIds = new ArrayList<>();
+        for (String branchName : branchNames) {
+            String otherBranchId = refs.read(branchName);
+            if (otherBranchId == null) {
                 throw new GitletException("A branch with that name does not exist.");
-            } else if (branchName.equals(Utils.readContentsAsString(CURR_BRANCH))) {
+            } else if (branchName.equals(currBranch)) {
                 throw new GitletException("Cannot merge a branch with itself.");
-            } else if (Objects.requireNonNull(findSplit(branchName)).getMessage().
-                    equals(accessBranchCommitId(branchName).getMessage())) {
-                throw new GitletException("Given branch is an ancestor of the current branch.");
-            } else if (Objects.requireNonNull(findSplit(branchName)).getMessage().
-                    equals(Objects.requireNonNull(getCurrCommit()).getMessage())) {
-                switching(branchName);
-                throw new GitletException("Current branch fast-forwarded.");
-            }
-
-            HashSet<String> allFiles = getAllFiles(branchName);
-            boolean conflict = false;
-            for (String file : allFiles) {
-                String splitVersion = Objects.requireNonNull(findSplit(branchName)).getBlobMap().get(file);
-                String headVersion = Objects.requireNonNull(getCurrCommit()).getBlobMap().get(file);
-                String branchVersion = accessBranchCommitId(branchName).getBlobMap().get(file);
-
-                if (splitVersion == null) { // case 4 & 5
-                    notInSplitCase(file, headVersion, branchVersion);
-                } else if (headVersion == null || branchVersion == null) { // case 6 & 7
-                    unmodifiedCase(file, splitVersion, headVersion, branchVersion);
-                } else if (splitVersion.equals(headVersion) || splitVersion.equals(branchVersion)) { // case 1 & 2
-                    modifiedCase(file, splitVersion, headVersion, branchVersion);
-                } else if (branchVersion.equals(headVersion)) { // case 3a
-                    modifiedCase(file, splitVersion, headVersion, branchVersion);
-                } else {
-                    conflict = true;
-                    mergeConflict(file, headVersion, branchVersion); // case 3b
+            }
+            branchIds.add(otherBranchId);
+        }
+        if (branchNames.size() == 1) {
+            mergeOne(branchNames.get(0), branchIds.get(0), currBranch);
+        } else {
+            mergeOctopus(branchNames, branchIds, currBranch);
+        }
+    }
+
+    private void mergeOne(String branchName, String branchId, String currBranch) {
+        String headId = getHead();
+        long start = trace.start();
+        Event event = events.begin(Events.MERGE_BASE);
+        Set<String> headAncestors = new HashSet<>();
+        addAncestors(headId, headAncestors);
+        String splitId = findSplit(headAncestors, branchId);
+        trace.end("merge: find split point", start, 0);
+        recordMergeBase(event, headId, branchId, splitId);
+        if (splitId.equals(branchId)) {
+            throw new GitletException("Given branch is an ancestor of the current branch.");
+        } else if (splitId.equals(headId)) {
+            fastForward(branchName, branchId);
+            throw new GitletException("Current branch fast-forwarded.");
+        }
+
+        Map<String, String> headBlobs = Objects.requireNonNull(accessCommit(headId)).getBlobMap();
+        MergePlan plan = planMerge(Objects.requireNonNull(accessCommit(splitId)).getBlobMap(), headBlobs,
+                Objects.requireNonNull(accessCommit(branchId)).getBlobMap(), Map.of());
+        applyMerge(plan.getWrites(), plan.getRemovals(), headBlobs);
+        reportRecordedResolutions();
+        if (plan.hasConflicts()) {
+            if (rerere.isEnabled()) {
+                Map<String, String> conflictedFiles = new HashMap<>();
+                for (String fileName : plan.getConflicts()) {
+                    conflictedFiles.put(fileName, plan.getWrites().get(fileName));
                 }
+                rerere.recordConflicts(conflictedFiles);
             }
-            if (conflict) {
-                throw new GitletException("Encountered a merge conflict.");
-            } else {
-                commit("Merged " + branchName + " into " + Utils.readContentsAsString(CURR_BRANCH) + ".");
+            throw new GitletException("Encountered a merge conflict.");
+        }
+        commit("Merged " + branchName + " into " + currBranch + ".", List.of(branchId));
+    }
+
+    /** Moves the current branch forward to BRANCHID, the tip of BRANCHNAME and a descendant of the
+     *  head, and updates the working directory to match, as reset does. The current branch stays
+     *  checked out, even when BRANCHNAME is a remote-tracking or bundle branch. */
+    private void fastForward(String branchName, String branchId) {
+        Commit headCommit = Objects.requireNonNull(getCurrCommit());
+        Commit branchCommit = Objects.requireNonNull(accessCommit(branchId));
+        updateCWD(branchCommit);
+        removeDifferentTrackedFiles(headCommit, branchCommit);
+        refs.write(refs.currentBranch(), branchId, "merge " + branchName + ": Fast-forward");
+        stagingArea.clearStage();
+        saveStage();
+        rerere.clearPending();
+    }
+
+    /** Merges each branch in turn into the result so far, entirely in memory, and refuses without
+     * touching anything if any of them conflicts. Branches already contained in the head are skipped. */
+    private void mergeOctopus(List<String> branchNames, List<String> branchIds, String currBranch) {
+        String headId = getHead();
+        Set<String> mergedAncestors = new HashSet<>(); // ancestors of the head and every branch merged so far
+        addAncestors(headId, mergedAncestors);
+        Map<String, String> headBlobs = Objects.requireNonNull(accessCommit(headId)).getBlobMap();
+        Map<String, String> result = new HashMap<>(headBlobs);
+        Map<String, String> unstored = new HashMap<>(); // blob ID -> contents of merged files not yet stored
+        List<String> mergedNames = new ArrayList<>();
+        List<String> mergedIds = new ArrayList<>();
+        for (int i = 0; i < branchIds.size(); i += 1) {
+            String branchId = branchIds.get(i);
+            if (mergedAncestors.contains(branchId)) {
+                continue; // already merged
+            }
+            Event event = events.begin(Events.MERGE_BASE);
+            String baseId = findSplit(mergedAncestors, branchId);
+            recordMergeBase(event, headId, branchId, baseId);
+            MergePlan plan = planMerge(Objects.requireNonNull(accessCommit(baseId)).getBlobMap(), result,
+                    Objects.requireNonNull(accessCommit(branchId)).getBlobMap(), unstored);
+            if (plan.hasConflicts()) {
+                throw new GitletException("Encountered a merge conflict with " + branchNames.get(i)
+                        + "; merge it on its own first.");
+            }
+            for (Map.Entry<String, String> write : plan.getWrites().entrySet()) {
+                String blobId = sha1(write.getValue());
+                unstored.put(blobId, write.getValue());
+                result.put(write.getKey(), blobId);
             }
-        } catch (GitletException e) {
-            System.out.println(e.getMessage());
+            result.keySet().removeAll(plan.getRemovals());
+            addAncestors(branchId, mergedAncestors);
+            mergedNames.add(branchNames.get(i));
+            mergedIds.add(branchId);
         }
+        if (mergedIds.isEmpty()) {
+            throw new GitletException("Given branches are ancestors of the current branch.");
+        }
+
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : result.entrySet()) {
+            if (!entry.getValue().equals(headBlobs.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        Map<String, String> writes = readBlobs(result, changed, unstored);
+        Set<String> removals = new HashSet<>(headBlobs.keySet());
+        removals.removeAll(result.keySet());
+        applyMerge(writes, removals, headBlobs);
+        reportRecordedResolutions();
+        commit("Merged " + String.join(", ", mergedNames) + " into " + currBranch + ".", mergedIds);
+    }
+
+    /** Plans the merge of BRANCH into HEAD, given their split point SPLIT, each mapping file names
+     *  to blob IDs. Only files whose blobs are not the same on all three sides can change, so only
+     *  their contents are read, with missing blobs fetched in one batch; the contents of blobs not
+     *  yet stored are taken from UNSTORED, by ID. */
+    private MergePlan planMerge(Map<String, String> split, Map<String, String> head, Map<String, String> branch,
+                                Map<String, String> unstored) {
+        long start = trace.start();
+        Set<String> changed = new HashSet<>();
+        List<String> wanted = new ArrayList<>();
+        for (Map<String, String> side : List.of(split, head, branch)) {
+            for (String fileName : side.keySet()) {
+                String splitId = split.get(fileName);
+                if ((!Objects.equals(splitId, head.get(fileName)) || !Objects.equals(splitId, branch.get(fileName)))
+                        && changed.add(fileName)) {
+                    for (Map<String, String> version : List.of(split, head, branch)) {
+                        String blobId = version.get(fileName);
+                        if (blobId != null && !unstored.containsKey(blobId)) {
+                            wanted.add(blobId);
+                        }
+                    }
+                }
+            }
+        }
+        prefetchBlobs(wanted);
+        MergePlan plan = MergePlan.plan(readBlobs(split, changed, unstored), readBlobs(head, changed, unstored),
+                readBlobs(branch, changed, unstored), resolver());
+        trace.end("merge: plan", start, 0);
+        return plan;
+    }
+
+    /** Returns the recorded-resolution cache if it is enabled, for merges to consult */
+    private Merge3.Resolver resolver() {
+        return rerere.isEnabled() ? rerere : null;
     }
 
-    private Commit findSplit(String branchName) {
-        ArrayList<String> allIds = new ArrayList<>();
-        LinkedList<Commit> toVisit = new LinkedList<>(); // add all commits and its parents into a linked list
-        if (getCurrCommit() != null) {
-            toVisit.add(getCurrCommit());
+    private void reportRecordedResolutions() {
+        if (rerere.getResolvedCount() > 0) {
+            out.println("Resolved " + rerere.getResolvedCount() + " conflict(s) using recorded resolutions.");
         }
-        if (accessBranchCommitId(branchName) != null) {
-            toVisit.add(accessBranchCommitId(branchName));
+    }
+
+    /** Turns reuse of recorded conflict resolutions on or off */
+    public void rerere(String setting) {
+        if (setting.equals("enable")) {
+            rerere.enable();
+        } else if (setting.equals("disable")) {
+            rerere.disable();
+        } else {
+            throw new GitletException("Incorrect operands.");
         }
+    }
 
+    /** Adds COMMITID and all of its ancestors to ANCESTORS, without revisiting commits already in it */
+    private void addAncestors(String commitId, Set<String> ancestors) {
+        ArrayDeque<String> toVisit = new ArrayDeque<>(List.of(commitId));
         while (!toVisit.isEmpty()) {
-            Commit firstCommitInList = toVisit.getFirst(); // access first commit in linked list
-            if (allIds.contains(firstCommitInList.getId(firstCommitInList))) {
-                return firstCommitInList;
+            String nextId = toVisit.removeFirst();
+            if (ancestors.add(nextId)) {
+                toVisit.addAll(Objects.requireNonNull(accessCommit(nextId)).getParents());
             }
-            allIds.add(firstCommitInList.getId(firstCommitInList));
-            if (firstCommitInList.getParent1() != null) {
-                toVisit.add(accessCommit(firstCommitInList.getParent1()));
+        }
+    }
+
+    private static void recordMergeBase(Event event, String headId, String branchId, String baseId) {
+        if (Events.shouldCommit(event)) {
+            Events.commit(event, headId, branchId, baseId);
+        }
+    }
+
+    /** Returns the ID of the latest common ancestor: the first ancestor of BRANCHID, in
+     * breadth-first order, that is in KNOWNANCESTORS */
+    private String findSplit(Set<String> knownAncestors, String branchId) {
+        Set<String> visited = new HashSet<>();
+        ArrayDeque<String> toVisit = new ArrayDeque<>(List.of(branchId));
+        while (!toVisit.isEmpty()) {
+            String commitId = toVisit.removeFirst();
+            if (knownAncestors.contains(commitId)) {
+                return commitId;
             }
-            if (firstCommitInList.getParent2() != null) {
-                toVisit.add(accessCommit(firstCommitInList.getParent2()));
+            if (visited.add(commitId)) {
+                toVisit.addAll(Objects.requireNonNull(accessCommit(commitId)).getParents());
             }
-            toVisit.removeFirst(); // move onto the next commit in linked list
         }
-        return null;
+        throw new GitletException("No common ancestor found.");
     }
 
-    private HashSet<String> getAllFiles(String branch) {
-        Commit branchCommit = accessBranchCommitId(branch);
-        Commit headCommit = getCurrCommit();
-        Commit splitPoint = findSplit(branch);
-        HashSet<String> allFiles = new HashSet<>(branchCommit.getBlobMap().keySet());
-        allFiles.addAll(Objects.requireNonNull(headCommit).getBlobMap().keySet());
-        allFiles.addAll(Objects.requireNonNull(splitPoint).getBlobMap().keySet());
-        return allFiles;
-    }
-
-    private void notInSplitCase(String file, String headVersion, String branchVersion) {
-        if (branchVersion != null && headVersion == null) {
-            File newFile = new File(CWD, file);
-            Utils.writeContents(newFile, branchVersion);
-            add(file);
-        } // if head != null: do nothing
-    }
-
-    private void modifiedCase(String file, String splitVersion, String headVersion, String branchVersion) {
-        if (splitVersion.equals(headVersion) && branchVersion != null) {
-            File newFile = new File(CWD, file);
-            Utils.writeContents(newFile, branchVersion);
-            add(file);
-        } // if split == branch: do nothing
-    }
-
-    private void unmodifiedCase(String file, String splitVersion, String headVersion, String branchVersion) {
-        if (splitVersion.equals(headVersion) && branchVersion == null) {
-            remove(file);
-        } // if split = branch: do nothing
-    }
-
-    private void mergeConflict(String file, String headVersion, String branchVersion) {
-        File conflictFile = new File(CWD, file);
-        String conflictMessage = "<<<<<<< HEAD" + "\n"
-                + Objects.requireNonNullElse(headVersion, "") + "=======" + "\n"
-                + Objects.requireNonNullElse(branchVersion, "") + ">>>>>>>";
-        Utils.writeContents(conflictFile, conflictMessage);
-        add(file);
+    /** Writes and stages the WRITES and REMOVALS of a merge in one pass; files outside the
+     * sparse-checkout patterns are staged without touching the disk */
+    private void applyMerge(Map<String, String> writes, Set<String> removals, Map<String, String> headBlobs) {
+        for (String fileName : removals) {
+            if (sparse.matches(fileName)) {
+                Utils.restrictedDelete(new File(cwd, fileName));
+            }
+            stagingArea.getStagedForRemoval().put(fileName, headBlobs.get(fileName));
+        }
+        checkout(sparse.filter(writes));
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            stagingArea.getStagedForAddition().put(write.getKey(), writeBlob(write.getValue()));
+        }
+        saveStage();
+    }
+
+    /** Shows the changes in the CWD that are not yet staged */
+    public void diff() {
+        Map<String, String> indexBlobs = sparse.filter(updatedBlobs());
+        Map<String, String> workingBlobs = new HashMap<>();
+        Map<String, String> workingContents = new HashMap<>(); // blob ID -> contents, for files not stored
+        for (String fileName : indexBlobs.keySet()) {
+            File file = new File(cwd, fileName);
+            if (file.isFile()) {
+                String contents = readWorkingFile(file);
+                String blobId = sha1(contents);
+                workingBlobs.put(fileName, blobId);
+                workingContents.put(blobId, contents);
+            }
+        }
+        writeDiff(indexBlobs, workingBlobs, workingContents);
+    }
+
+    /** Shows the changes staged for the next commit */
+    public void diffCached() {
+        writeDiff(Objects.requireNonNull(getCurrCommit()).getBlobMap(), updatedBlobs(), Map.of());
+    }
+
+    /** Shows the changes between two commits */
+    public void diff(String fromCommitId, String toCommitId) {
+        Commit fromCommit = Objects.requireNonNull(accessCommit(fromCommitId));
+        Commit toCommit = Objects.requireNonNull(accessCommit(toCommitId));
+        writeDiff(fromCommit.getBlobMap(), toCommit.getBlobMap(), Map.of());
+    }
+
+    /** Writes a unified diff for every file whose blob ID differs between BEFORE and AFTER, in name
+     *  order; only those blobs are read, and the contents of blobs not yet stored are taken from UNSTORED */
+    private void writeDiff(Map<String, String> before, Map<String, String> after, Map<String, String> unstored) {
+        UnifiedDiff unifiedDiff = new UnifiedDiff(out);
+        Set<String> fileNames = new TreeSet<>();
+        for (Map<String, String> side : List.of(before, after)) {
+            for (String fileName : side.keySet()) {
+                if (!Objects.equals(before.get(fileName), after.get(fileName))) {
+                    fileNames.add(fileName);
+                }
+            }
+        }
+        Map<String, String> beforeContents = readBlobs(before, fileNames, unstored);
+        Map<String, String> afterContents = readBlobs(after, fileNames, unstored);
+        for (String fileName : fileNames) {
+            unifiedDiff.write(fileName, beforeContents.get(fileName), afterContents.get(fileName));
+        }
+        out.flush();
+    }
+
+    /** Sets, lists or disables the sparse-checkout patterns, then updates the CWD to match */
+    public void sparseCheckout(String subcommand, List<String> patterns) {
+        switch (subcommand) {
+            case "list":
+                for (String pattern : sparse.getPatterns()) {
+                    out.println(pattern);
+                }
+                break;
+            case "set":
+                if (patterns.isEmpty()) {
+                    throw new GitletException("Please enter a pattern.");
+                }
+                applySparse(patterns);
+                break;
+            case "disable":
+                applySparse(List.of());
+                break;
+            default:
+                throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Saves the new PATTERNS, deletes tracked files that fall outside them and writes the ones that now match */
+    private void applySparse(List<String> patterns) {
+        Map<String, String> headBlobs = Objects.requireNonNull(getCurrCommit()).getBlobMap();
+        SparseCheckout newSparse = new SparseCheckout(sparseFile, patterns);
+        Map<String, String> toWrite = new HashMap<>();
+        List<String> toDelete = new ArrayList<>();
+        for (Map.Entry<String, String> entry : headBlobs.entrySet()) {
+            boolean wasMatched = sparse.matches(entry.getKey());
+            boolean matches = newSparse.matches(entry.getKey());
+            if (wasMatched && !matches) {
+                toDelete.add(entry.getKey());
+            } else if (!wasMatched && matches) {
+                if (new File(cwd, entry.getKey()).exists()) {
+                    throw new GitletException("There is an untracked file in the way;"
+                            + " delete it, or add and commit it first.");
+                }
+                toWrite.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (String fileName : toDelete) { // a file is only deleted if the head commit holds the same contents
+            File file = new File(cwd, fileName);
+            if (stagingArea.getStagedForAddition().containsKey(fileName)
+                    || stagingArea.getStagedForRemoval().containsKey(fileName)
+                    || file.isFile() && !sha1(readWorkingFile(file)).equals(headBlobs.get(fileName))) {
+                throw new GitletException("You have uncommitted changes.");
+            }
+        }
+        sparse.set(patterns);
+        for (String fileName : toDelete) {
+            Utils.restrictedDelete(new File(cwd, fileName));
+        }
+        checkoutBlobs(toWrite);
+    }
+
+    /** The current branch and the ID of its tip, as read at one moment */
+    private static class RefSnapshot {
+        private final String currentBranch;
+        private final String headId;
+
+        RefSnapshot(String currentBranch, String headId) {
+            this.currentBranch = currentBranch;
+            this.headId = headId;
+        }
     }
 }
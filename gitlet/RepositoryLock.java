@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+
+/** An exclusive lock on a repository, held by whichever process is changing it. The lock is an
+ *  operating-system lock (FileChannel.tryLock) on a file in the .gitlet directory, so it is
+ *  released automatically if the holder dies; the file itself is never deleted. Readers take
+ *  no lock: they read immutable commits and refs that writers replace atomically.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class RepositoryLock {
+    /** System property for how long, in milliseconds, to wait for another writer to finish */
+    static final String TIMEOUT_PROPERTY = "gitlet.lock.timeout";
+    private static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+    private static final long RETRY_MILLIS = 20;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+
+    private RepositoryLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /** Locks LOCKFILE, waiting up to the configured timeout for its holder to let go */
+    static RepositoryLock acquire(File lockFile) {
+        long deadline = System.currentTimeMillis() + Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_MILLIS);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            while (true) {
+                FileLock lock = tryLock(channel);
+                if (lock != null) {
+                    return new RepositoryLock(channel, lock);
+                } else if (System.currentTimeMillis() >= deadline) {
+                    throw new GitletException("Another gitlet process is changing this repository; try again later.");
+                }
+                Thread.sleep(RETRY_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close(channel);
+            throw new GitletException("Interrupted while waiting for the repository lock.");
+        } catch (RuntimeException e) {
+            close(channel);
+            throw e;
+        }
+    }
+
+    /** Returns the lock on CHANNEL, or null if another process or another channel in this one holds it */
+    private static FileLock tryLock(FileChannel channel) {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void release() {
+        try {
+            lock.release();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            close(channel);
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
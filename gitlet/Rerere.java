@@ -0,0 +1,182 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Reuses recorded resolutions of merge conflicts. When enabled, the conflicted files a merge
+ *  leaves behind are remembered; when their resolutions are committed, each conflicting region
+ *  is fingerprinted (a hash of its normalized pair of sides, in either order) and its resolution
+ *  stored in a table keyed by that fingerprint. Later merges that produce the same conflicting
+ *  region take the recorded resolution instead of writing conflict markers.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class Rerere implements Merge3.Resolver {
+    /** Fingerprint -> resolution table */
+    private final File tableFile;
+    /** Conflicted files of the merge in progress, mapped to their contents with markers */
+    private final File pendingFile;
+    private final File dir;
+    private HashMap<String, String> table;
+    private int resolvedCount;
+
+    public Rerere(File dir) {
+        this.dir = dir;
+        this.tableFile = new File(dir, "table");
+        this.pendingFile = new File(dir, "MERGE_RR");
+    }
+
+    public boolean isEnabled() {
+        return dir.isDirectory();
+    }
+
+    public void enable() {
+        dir.mkdir();
+    }
+
+    /** Turns the cache off and forgets every recorded resolution */
+    public void disable() {
+        tableFile.delete();
+        pendingFile.delete();
+        dir.delete();
+    }
+
+    /** Returns the number of conflicting regions resolved from the table since the last reset */
+    public int getResolvedCount() {
+        return resolvedCount;
+    }
+
+    /** Starts counting resolutions afresh, at the start of each merge */
+    public void resetResolvedCount() {
+        resolvedCount = 0;
+    }
+
+    @Override
+    public String resolve(String ours, String theirs) {
+        String resolution = loadTable().get(fingerprint(ours, theirs));
+        if (resolution != null) {
+            resolvedCount += 1;
+        }
+        return resolution;
+    }
+
+    /** Remembers the CONFLICTEDFILES (file name -> contents with markers) left by a merge */
+    public void recordConflicts(Map<String, String> conflictedFiles) {
+        if (!conflictedFiles.isEmpty()) {
+            Utils.writeObject(pendingFile, new HashMap<>(conflictedFiles));
+        }
+    }
+
+    /** Forgets the conflicts of an abandoned merge */
+    public void clearPending() {
+        pendingFile.delete();
+    }
+
+    /** Returns the names of the files left conflicted by the merge in progress, if any */
+    @SuppressWarnings("unchecked")
+    public Set<String> pendingFiles() {
+        if (!pendingFile.exists()) {
+            return Set.of();
+        }
+        Map<String, String> pending = Utils.readObject(pendingFile, HashMap.class);
+        return pending.keySet();
+    }
+
+    /** Records how each pending conflict was resolved, given the contents of the pending files in
+     *  the commit (file name -> contents). Files whose resolution cannot be lined up with their
+     *  conflicts are skipped. */
+    @SuppressWarnings("unchecked")
+    public void recordResolutions(Map<String, String> blobMap) {
+        if (!pendingFile.exists()) {
+            return;
+        }
+        Map<String, String> pending = Utils.readObject(pendingFile, HashMap.class);
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            String resolved = blobMap.get(entry.getKey());
+            if (resolved != null) {
+                changed |= recordFile(entry.getValue(), resolved);
+            }
+        }
+        if (changed) {
+            Utils.writeObject(tableFile, table);
+        }
+        pendingFile.delete();
+    }
+
+    /** Matches the unchanged text around each conflict in CONFLICTED against RESOLVED, and
+     *  records the text found in place of each conflict; returns whether anything was recorded */
+    private boolean recordFile(String conflicted, String resolved) {
+        List<String> common = new ArrayList<>();
+        List<String[]> sides = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        StringBuilder ours = null;
+        for (String line : Diff.lines(conflicted)) {
+            if (line.equals(Merge3.OURS_MARKER)) {
+                common.add(current.toString());
+                ours = new StringBuilder();
+                current = ours;
+            } else if (line.equals(Merge3.SEPARATOR) && ours != null) {
+                current = new StringBuilder();
+            } else if (line.equals(Merge3.THEIRS_MARKER) && ours != null) {
+                sides.add(new String[]{ours.toString(), current.toString()});
+                ours = null;
+                current = new StringBuilder();
+            } else {
+                current.append(line);
+            }
+        }
+        common.add(current.toString());
+        if (sides.isEmpty() || !resolved.startsWith(common.get(0))) {
+            return false;
+        }
+        Map<String, String> resolutions = new HashMap<>();
+        int pos = common.get(0).length();
+        for (int i = 0; i < sides.size(); i += 1) {
+            String next = common.get(i + 1);
+            int end;
+            if (i == sides.size() - 1) {
+                end = resolved.endsWith(next) ? resolved.length() - next.length() : -1;
+            } else {
+                end = next.isEmpty() ? -1 : resolved.indexOf(next, pos);
+            }
+            if (end < pos) {
+                return false;
+            }
+            String resolution = resolved.substring(pos, end);
+            if (resolution.contains(Merge3.OURS_MARKER) || resolution.contains(Merge3.THEIRS_MARKER)) {
+                return false; // still unresolved
+            }
+            resolutions.put(fingerprint(sides.get(i)[0], sides.get(i)[1]), resolution);
+            pos = end + next.length();
+        }
+        loadTable().putAll(resolutions);
+        return true;
+    }
+
+    /** Hashes the two sides of a conflict, ignoring their order, line endings and trailing whitespace */
+    static String fingerprint(String ours, String theirs) {
+        String a = normalize(ours);
+        String b = normalize(theirs);
+        return a.compareTo(b) <= 0 ? Utils.sha1(a, "\0", b) : Utils.sha1(b, "\0", a);
+    }
+
+    private static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        for (String line : Diff.lines(text)) {
+            normalized.append(line.stripTrailing()).append('\n');
+        }
+        return normalized.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> loadTable() {
+        if (table == null) {
+            table = tableFile.exists() ? Utils.readObject(tableFile, HashMap.class) : new HashMap<>();
+        }
+        return table;
+    }
+}
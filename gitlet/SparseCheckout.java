@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The sparse-checkout patterns of a repository, stored one per line in .gitlet/sparse.
+ *  A pattern names a file or directory ("docs" matches "docs" and everything under "docs/"),
+ *  or ends in '*' to match every path starting with the text before it. When no patterns
+ *  are set, every path matches.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class SparseCheckout {
+    private final File file;
+    private final List<String> patterns = new ArrayList<>();
+
+    public SparseCheckout(File file) {
+        this.file = file;
+        if (file.exists()) {
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                if (!line.isBlank()) {
+                    patterns.add(line.strip());
+                }
+            }
+        }
+    }
+
+    /** An unsaved set of PATTERNS, for checking which paths a new configuration would match */
+    public SparseCheckout(File file, Collection<String> patterns) {
+        this.file = file;
+        this.patterns.addAll(patterns);
+    }
+
+    /** Returns whether sparse checkout is turned on */
+    public boolean isEnabled() {
+        return !patterns.isEmpty();
+    }
+
+    public List<String> getPatterns() {
+        return patterns;
+    }
+
+    /** Returns whether PATH belongs in the working directory */
+    public boolean matches(String path) {
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (String pattern : patterns) {
+            if (pattern.endsWith("*")) {
+                if (path.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                    return true;
+                }
+            } else {
+                String cone = pattern.endsWith("/") ? pattern.substring(0, pattern.length() - 1) : pattern;
+                if (path.equals(cone) || path.startsWith(cone + "/")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the entries of BLOBMAP whose paths belong in the working directory */
+    public Map<String, String> filter(Map<String, String> blobMap) {
+        if (patterns.isEmpty()) {
+            return blobMap;
+        }
+        Map<String, String> matching = new HashMap<>();
+        for (Map.Entry<String, String> entry : blobMap.entrySet()) {
+            if (matches(entry.getKey())) {
+                matching.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return matching;
+    }
+
+    /** Replaces the patterns with NEWPATTERNS and saves them; an empty collection disables sparse checkout */
+    public void set(Collection<String> newPatterns) {
+        patterns.clear();
+        patterns.addAll(newPatterns);
+        if (patterns.isEmpty()) {
+            file.delete();
+        } else {
+            Utils.writeContents(file, String.join("\n", patterns) + "\n");
+        }
+    }
+}
@@ -8,7 +8,6 @@ import java.util.Map;
 public class StagingArea implements Serializable {
     private Map<String, String> stagedForAddition;
     private Map<String, String> stagedForRemoval;
-    private static final File STAGING_FILE = new File(Repository.STAGING_DIR, "stagingArea.txt");
 
     public StagingArea() {
         this.stagedForAddition = new HashMap<>();
@@ -32,15 +31,16 @@ public class StagingArea implements Serializable {
     }
 
 
-    public void load() {
-        if (STAGING_FILE.exists()) {
-            StagingArea stage = Utils.readObject(STAGING_FILE, StagingArea.class);
+    /** Replaces the staged files with those saved in STAGINGFILE, if it exists */
+    public void load(File stagingFile) {
+        if (stagingFile.exists()) {
+            StagingArea stage = Utils.readObject(stagingFile, StagingArea.class);
             this.stagedForAddition = stage.getStagedForAddition();
             this.stagedForRemoval = stage.getStagedForRemoval();
         }
     }
 
-    public void save() {
-        Utils.writeObject(STAGING_FILE, this);
+    public void save(DurableWriter writer, File stagingFile) {
+        writer.writeRef(stagingFile, Utils.serialize(this));
     }
 }
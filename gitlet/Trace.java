@@ -0,0 +1,82 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Counts the calls, bytes and time spent in each kind of work a repository does while running a
+ *  command: reading and writing objects and files, hashing, listing directories, and the major
+ *  phases of commands such as checkouts and merges. Tracing is off unless enabled, with --trace on
+ *  the command line; when off, start and end do nothing but test a flag, so the calls can stay in
+ *  hot paths. Counts are summed under a name per kind of work and printed, most expensive first,
+ *  as a table or as JSON.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class Trace {
+    private volatile boolean enabled;
+    /** Calls, bytes and nanoseconds, in that order, by name */
+    private final Map<String, long[]> totals = new HashMap<>();
+
+    void enable() {
+        enabled = true;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Returns the time to pass to end, or 0 when tracing is off */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Counts one call of NAME, begun when start returned START, that moved BYTES bytes */
+    void end(String name, long start, long bytes) {
+        if (enabled) {
+            add(name, 1, bytes, System.nanoTime() - start);
+        }
+    }
+
+    /** Counts CALLS calls of NAME, together moving BYTES bytes in NANOS nanoseconds */
+    synchronized void add(String name, long calls, long bytes, long nanos) {
+        if (enabled) {
+            long[] total = totals.computeIfAbsent(name, k -> new long[3]);
+            total[0] += calls;
+            total[1] += bytes;
+            total[2] += nanos;
+        }
+    }
+
+    /** Prints the counts to OUT as a table, most expensive first */
+    synchronized void printTable(PrintStream out) {
+        out.printf("%-32s %10s %14s %12s%n", "operation", "calls", "bytes", "ms");
+        for (String name : byCost()) {
+            long[] total = totals.get(name);
+            out.printf("%-32s %10d %14d %12.3f%n", name, total[0], total[1], total[2] / 1e6);
+        }
+        out.flush();
+    }
+
+    /** Prints the counts to OUT as a JSON object, most expensive first */
+    synchronized void printJson(PrintStream out) {
+        StringBuilder json = new StringBuilder("{\"operations\": [");
+        String separator = "";
+        for (String name : byCost()) {
+            long[] total = totals.get(name);
+            json.append(separator).append("\n  {\"name\": \"").append(name.replace("\"", "\\\""))
+                    .append("\", \"calls\": ").append(total[0]).append(", \"bytes\": ").append(total[1])
+                    .append(", \"ns\": ").append(total[2]).append('}');
+            separator = ",";
+        }
+        out.println(json.append("\n]}"));
+        out.flush();
+    }
+
+    private List<String> byCost() {
+        List<String> names = new ArrayList<>(totals.keySet());
+        names.sort((a, b) -> Long.compare(totals.get(b)[2], totals.get(a)[2]));
+        return names;
+    }
+}
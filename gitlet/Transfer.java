@@ -0,0 +1,151 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/** Moves history from one repository to another. The sending side walks its commit graph back
+ *  from the commit the receiver wants, asking the receiver at each commit whether it already has
+ *  it; a commit the receiver has is never expanded, since a repository holds every ancestor of the
+ *  commits it holds. The walk therefore visits only new history and the commits bordering it.
+ *  The missing commits are then streamed to the receiver as one Pack, with the blobs they track
+ *  that the receiver lacks ahead of them and parents before children, so that an interrupted
+ *  transfer still leaves the receiver with complete histories. A partial clone is sent no blobs
+ *  with its commits; it asks for them later, in packs of blobs alone.
+ *  @author Liana Kong and Mischa Mikami
+ */
+class Transfer {
+    /** Bytes buffered between the sending and receiving side of a pack */
+    private static final int PIPE_BYTES = 1 << 16;
+
+    /** Returns the IDs of the commits reachable from WANT in SOURCE that TARGET lacks, each after its parents */
+    static List<String> missing(Repository source, String want, Repository target) {
+        return missing(source, want, target::hasCommit);
+    }
+
+    /** Returns the IDs of the commits reachable from WANT in SOURCE for which HAVE is false, each
+     *  after its parents; HAVE must hold for every ancestor of a commit it holds for */
+    static List<String> missing(Repository source, String want, Predicate<String> have) {
+        List<String> order = new ArrayList<>();
+        Set<String> expanded = new HashSet<>();
+        Set<String> emitted = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        if (!have.test(want)) {
+            stack.push(want);
+        }
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (expanded.add(id)) {
+                for (String parent : source.readCommit(id).getParents()) {
+                    if (!expanded.contains(parent) && !have.test(parent)) {
+                        stack.push(parent);
+                    }
+                }
+            } else {
+                stack.pop();
+                if (emitted.add(id)) {
+                    order.add(id);
+                }
+            }
+        }
+        return order;
+    }
+
+    /** Returns the IDs of the blobs tracked by the commits COMMITIDS of SOURCE for which HAVE is false */
+    static List<String> missingBlobs(Repository source, List<String> commitIds, Predicate<String> have) {
+        Set<String> blobIds = new LinkedHashSet<>();
+        for (String id : commitIds) {
+            for (String blobId : source.readCommit(id).getBlobMap().values()) {
+                if (!blobIds.contains(blobId) && !have.test(blobId)) {
+                    blobIds.add(blobId);
+                }
+            }
+        }
+        return new ArrayList<>(blobIds);
+    }
+
+    /** Sends the commits COMMITIDS from SOURCE to TARGET, with the blobs they track that TARGET
+     *  lacks unless it is a partial clone */
+    static void send(Repository source, List<String> commitIds, Repository target) {
+        List<String> blobIds = target.isPartial() ? List.of() : missingBlobs(source, commitIds, target::hasBlob);
+        send(source, commitIds, blobIds, target);
+    }
+
+    /** Sends the commits COMMITIDS and blobs BLOBIDS from SOURCE to TARGET as one pack, written on
+     *  a thread of its own while TARGET reads it */
+    static void send(Repository source, List<String> commitIds, List<String> blobIds, Repository target) {
+        if (commitIds.isEmpty() && blobIds.isEmpty()) {
+            return;
+        }
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        PipedInputStream in = new PipedInputStream(PIPE_BYTES);
+        PipedOutputStream pipe;
+        try {
+            pipe = new PipedOutputStream(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Thread sender = new Thread(() -> {
+            try {
+                OutputStream out = new BufferedOutputStream(pipe);
+                Pack.write(out, source, commitIds, blobIds);
+                out.close();
+            } catch (IOException | RuntimeException e) {
+                failure.set(e); // before the pipe closes, so the receiver can tell whose failure it was
+                close(pipe);
+            }
+        }, "gitlet-pack-sender");
+        sender.start();
+        try {
+            Pack.read(new BufferedInputStream(in), target);
+        } catch (IOException e) {
+            if (failure.get() == null) {
+                throw new UncheckedIOException(e);
+            }
+        } catch (GitletException e) {
+            if (failure.get() == null) {
+                throw e;
+            } // otherwise the sender failed first, and its failure is reported below
+        } finally {
+            close(in); // unblocks the sender if the receiver gave up early
+            join(sender);
+        }
+        Exception senderFailure = failure.get();
+        if (senderFailure instanceof RuntimeException) {
+            throw (RuntimeException) senderFailure;
+        } else if (senderFailure != null) {
+            throw new UncheckedIOException((IOException) senderFailure);
+        }
+    }
+
+    private static void close(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            return; // the other side has gone; there is nothing left to release
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitletException("Interrupted.");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+
+/** Writes the difference between two versions of a file in unified-diff format.
+ *  Lines are streamed to the output as each hunk is produced. Files larger than
+ *  LARGE_FILE_BYTES, or containing NUL bytes, are summarized instead of diffed.
+ *  @author Liana Kong and Mischa Mikami
+ */
+public class UnifiedDiff {
+    /** Number of unchanged lines shown around each change */
+    static final int CONTEXT = 3;
+    /** Files bigger than this (in characters) are summarized rather than diffed line by line */
+    static final int LARGE_FILE_BYTES = 8 << 20;
+
+    private final Appendable out;
+
+    public UnifiedDiff(Appendable out) {
+        this.out = out;
+    }
+
+    /** Writes the diff of FILENAME from OLDCONTENTS to NEWCONTENTS; either may be null
+     *  if the file did not exist on that side. Writes nothing if they are equal. */
+    public void write(String fileName, String oldContents, String newContents) {
+        if (sameContents(oldContents, newContents)) {
+            return;
+        }
+        try {
+            out.append("diff --gitlet a/").append(fileName).append(" b/").append(fileName).append('\n');
+            if (isSummarized(oldContents) || isSummarized(newContents)) {
+                out.append(isBinary(oldContents) || isBinary(newContents) ? "Binary" : "Large")
+                        .append(" file ").append(fileName).append(" changed (")
+                        .append(String.valueOf(length(oldContents))).append(" -> ")
+                        .append(String.valueOf(length(newContents))).append(" bytes)\n");
+                return;
+            }
+            out.append("--- ").append(oldContents == null ? "/dev/null" : "a/" + fileName).append('\n');
+            out.append("+++ ").append(newContents == null ? "/dev/null" : "b/" + fileName).append('\n');
+            String[] a = Diff.lines(Objects.requireNonNullElse(oldContents, ""));
+            String[] b = Diff.lines(Objects.requireNonNullElse(newContents, ""));
+            writeHunks(a, b, Diff.diff(a, b));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Compares hashes before contents, so unchanged files are skipped cheaply */
+    private static boolean sameContents(String a, String b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.length() == b.length() && a.hashCode() == b.hashCode() && a.equals(b);
+    }
+
+    private static boolean isSummarized(String contents) {
+        return contents != null && (contents.length() > LARGE_FILE_BYTES || isBinary(contents));
+    }
+
+    private static boolean isBinary(String contents) {
+        return contents != null && contents.indexOf('\0') >= 0;
+    }
+
+    private static int length(String contents) {
+        return contents == null ? 0 : contents.length();
+    }
+
+    /** Groups hunks whose context would overlap and writes each group as one @@ section */
+    private void writeHunks(String[] a, String[] b, List<Diff.Hunk> hunks) throws IOException {
+        int i = 0;
+        while (i < hunks.size()) {
+            int j = i;
+            while (j + 1 < hunks.size() && hunks.get(j + 1).aStart - hunks.get(j).aEnd <= 2 * CONTEXT) {
+                j += 1;
+            }
+            Diff.Hunk first = hunks.get(i);
+            Diff.Hunk last = hunks.get(j);
+            int aStart = Math.max(0, first.aStart - CONTEXT);
+            int bStart = first.bStart - (first.aStart - aStart);
+            int aEnd = Math.min(a.length, last.aEnd + CONTEXT);
+            int bEnd = last.bEnd + (aEnd - last.aEnd);
+            out.append("@@ -").append(range(aStart, aEnd)).append(" +").append(range(bStart, bEnd)).append(" @@\n");
+            int aPos = aStart;
+            for (int k = i; k <= j; k += 1) {
+                Diff.Hunk hunk = hunks.get(k);
+                writeLines(' ', a, aPos, hunk.aStart);
+                writeLines('-', a, hunk.aStart, hunk.aEnd);
+                writeLines('+', b, hunk.bStart, hunk.bEnd);
+                aPos = hunk.aEnd;
+            }
+            writeLines(' ', a, aPos, aEnd);
+            i = j + 1;
+        }
+    }
+
+    /** Formats a range as "start,count" with a 1-based start, as unified diffs do */
+    private static String range(int start, int end) {
+        int count = end - start;
+        return (count == 0 ? start : start + 1) + "," + count;
+    }
+
+    private void writeLines(char prefix, String[] lines, int from, int to) throws IOException {
+        for (int k = from; k < to; k += 1) {
+            out.append(prefix).append(lines[k]);
+            if (!lines[k].endsWith("\n")) {
+                out.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+}
@@ -20,8 +20,8 @@ import java.util.List;
  */
 class Utils {
 
-    public static void createFileWithContent(String fileName, String content) {
-        File file = new File(Repository.CWD, fileName);
+    public static void createFileWithContent(File dir, String fileName, String content) {
+        File file = new File(dir, fileName);
         try (FileWriter writer = new FileWriter(file)) {
             writer.write(content);
         } catch (IOException e) {
@@ -0,0 +1,75 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** JMH version of "java gitlet.Benchmark checkout": checks out a synthetic commit of FILES files
+ *  of FILEBYTES bytes each, read from a directory of blobs as a checkout reads them from the
+ *  object store, into an empty directory with THREADS writer threads.
+ *  @author Liana Kong and Mischa Mikami
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CheckoutBenchmark {
+    @Param({"10000"})
+    public int files;
+    @Param({"1024"})
+    public int fileBytes;
+    @Param({"1", "8"})
+    public int threads;
+
+    private Path store;
+    private Map<String, String> blobIds;
+    private CheckoutWriter.Source source;
+    /** The directory checked out into, new for each invocation */
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void writeBlobs() throws IOException {
+        store = Files.createTempDirectory("gitlet-jmh-blobs");
+        blobIds = Benchmark.writeBlobStore(store, files, fileBytes);
+        source = Benchmark.blobStoreSource(store);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteBlobs() throws IOException {
+        Benchmark.deleteRecursively(store);
+    }
+
+    @Setup(Level.Invocation)
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("gitlet-jmh");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDirectory() throws IOException {
+        Benchmark.deleteRecursively(dir);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public long checkout() {
+        CheckoutWriter writer = new CheckoutWriter(dir.toFile(), threads, 64 << 20);
+        writer.write(blobIds, source);
+        return writer.getBytesWritten();
+    }
+}
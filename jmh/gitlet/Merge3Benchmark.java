@@ -0,0 +1,47 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/** JMH version of "java gitlet.Benchmark merge3": three-way merges a file of LINES lines in which
+ *  each side changed every 100th line, without conflicts, writing the result nowhere.
+ *  @author Liana Kong and Mischa Mikami
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class Merge3Benchmark {
+    @Param({"200000"})
+    public int lines;
+
+    private String[] base;
+    private String[] ours;
+    private String[] theirs;
+
+    @Setup
+    public void buildInput() {
+        String[][] input = Benchmark.merge3Input(lines);
+        base = input[0];
+        ours = input[1];
+        theirs = input[2];
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public int merge3() {
+        return Merge3.merge(base, ours, theirs, Writer.nullWriter());
+    }
+}
@@ -0,0 +1,157 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** JMH version of "java gitlet.Benchmark repository": times the commands and internals that
+ *  dominate real use against a repository built by Benchmark.generateRepository from FILES,
+ *  FILEBYTES, DEPTH and BRANCHES, which must be at least 1. Each benchmark runs in its own fork
+ *  against a freshly generated repository, so those that change it do not affect the others.
+ *  Commands print to a null stream.
+ *  @author Liana Kong and Mischa Mikami
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RepositoryBenchmark {
+    @Param({"1000"})
+    public int files;
+    @Param({"1024"})
+    public int fileBytes;
+    @Param({"200"})
+    public int depth;
+    @Param({"4"})
+    public int branches;
+
+    private Path dir;
+    private Repository repo;
+    private String mainTip;
+    private Commit head;
+    private String content;
+    /** Number of invocations so far, to make each edit and commit different */
+    private int invocations;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        dir = Files.createTempDirectory("gitlet-jmh");
+        repo = Benchmark.generateRepository(dir, files, fileBytes, depth, branches);
+        mainTip = repo.getHead();
+        head = repo.readCommit(mainTip);
+        content = Benchmark.syntheticContents(0, fileBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Benchmark.deleteRecursively(dir);
+    }
+
+    /** Puts main back at its generated tip before each merge */
+    @State(Scope.Benchmark)
+    public static class Unmerged {
+        @Setup(Level.Invocation)
+        public void reset(RepositoryBenchmark benchmark) {
+            benchmark.repo.reset(benchmark.mainTip);
+        }
+    }
+
+    /** Changes file0.txt before each add */
+    @State(Scope.Benchmark)
+    public static class Edited {
+        @Setup(Level.Invocation)
+        public void edit(RepositoryBenchmark benchmark) {
+            benchmark.invocations += 1;
+            Utils.writeContents(new File(benchmark.repo.getRoot(), "file0.txt"),
+                    benchmark.content + "add " + benchmark.invocations + "\n");
+        }
+    }
+
+    /** Changes and stages file1.txt before each commit */
+    @State(Scope.Benchmark)
+    public static class Staged {
+        @Setup(Level.Invocation)
+        public void stage(RepositoryBenchmark benchmark) {
+            benchmark.invocations += 1;
+            Utils.writeContents(new File(benchmark.repo.getRoot(), "file1.txt"),
+                    benchmark.content + "commit " + benchmark.invocations + "\n");
+            benchmark.repo.add("file1.txt");
+        }
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public String sha1() {
+        return Utils.sha1(content);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public byte[] commitSerialize() {
+        return Utils.serialize(head);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public Commit commitDeserialize() {
+        return repo.readCommit(mainTip);
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void log() {
+        repo.log();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void globalLog() {
+        repo.globalLog();
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void find() {
+        repo.find("main 1");
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void status() {
+        repo.status();
+    }
+
+    /** Switches to a side branch and back */
+    @org.openjdk.jmh.annotations.Benchmark
+    public void switching() {
+        repo.switching(Benchmark.branchName(0));
+        repo.switching("main");
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void merge(Unmerged unmerged) {
+        invocations += 1;
+        repo.merge(List.of(Benchmark.branchName(invocations % branches)));
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void add(Edited edited) {
+        repo.add("file0.txt");
+    }
+
+    @org.openjdk.jmh.annotations.Benchmark
+    public void commit(Staged staged) {
+        repo.commit("bench commit " + invocations);
+    }
+}